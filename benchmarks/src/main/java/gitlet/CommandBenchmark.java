@@ -0,0 +1,234 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of gitlet commands on a repository made by SyntheticRepo.
+ *  Each one loads the repository afresh and runs one command, as a gitlet
+ *  process does, leaving out only the start of the JVM. The shape of the
+ *  repository is set by these parameters, which may be given on the
+ *  command line, as in "java -jar benchmarks.jar -p files=10000":
+ *      files      the number of files (1000)
+ *      fileSize   the size of each file in bytes (1024)
+ *      depth      the number of commits on master (50)
+ *      branches   the number of side branches (2)
+ *  Every benchmark runs in its own JVM, since Repository can only work on
+ *  one directory per process. Commands that change the repository are set
+ *  back up before each invocation, outside the time measured.
+ *
+ *  @author Nathan Lee
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommandBenchmark {
+
+    /** A generated repository in a temporary directory. */
+    @State(Scope.Benchmark)
+    public static class Repo {
+        @Param("1000")
+        public int files;
+        @Param("1024")
+        public int fileSize;
+        @Param("50")
+        public int depth;
+        @Param("2")
+        public int branches;
+
+        /** The directory holding the working directory and any copies. */
+        Path scratch;
+        /** The working directory of the repository. */
+        Path work;
+        SyntheticRepo generator;
+        private PrintStream stdout;
+
+        @Setup(Level.Trial)
+        public void create() throws IOException {
+            scratch = Files.createTempDirectory("gitlet-bench");
+            work = scratch.resolve("work");
+            Files.createDirectories(work);
+            SyntheticRepo.useDirectory(work.toFile());
+            generator = new SyntheticRepo(files, fileSize, depth, branches);
+            generator.generate();
+            stdout = SyntheticRepo.quiet();
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() throws IOException {
+            System.setOut(stdout);
+            SyntheticRepo.delete(scratch);
+        }
+
+        /** Returns the commit the branch NAME points to. */
+        ObjectId tip(String name) {
+            return new RefJournal(Repository.GITLET_DIR).getBranches().get(name).getCommit();
+        }
+
+        Path gitletDir() {
+            return Repository.GITLET_DIR.toPath();
+        }
+    }
+
+    /** Changes 10% of the files before each invocation of add. */
+    @State(Scope.Benchmark)
+    public static class Modified {
+        String[] paths;
+
+        @Setup(Level.Invocation)
+        public void modify(Repo repo) {
+            paths = repo.generator.touch(Math.max(repo.files / 10, 1));
+        }
+    }
+
+    /** Stages changes to 1% of the files before each invocation of commit. */
+    @State(Scope.Benchmark)
+    public static class Staged {
+        @Setup(Level.Invocation)
+        public void stage(Repo repo) {
+            new Repository().add(repo.generator.touch(Math.max(repo.files / 100, 1)));
+        }
+    }
+
+    /** Puts master back where it was generated before each merge. */
+    @State(Scope.Benchmark)
+    public static class Unmerged {
+        ObjectId tip;
+
+        @Setup(Level.Trial)
+        public void remember(Repo repo) {
+            tip = repo.tip("master");
+        }
+
+        @Setup(Level.Invocation)
+        public void reset() {
+            new Repository().reset(tip.toString());
+        }
+    }
+
+    /** Alternates between master and branch-1. */
+    @State(Scope.Benchmark)
+    public static class Alternating {
+        boolean onMaster = true;
+
+        String next() {
+            onMaster = !onMaster;
+            return onMaster ? "master" : "branch-1";
+        }
+    }
+
+    /** A remote named origin, for push and fetch. The generated repository
+     *  and a new, empty one are both kept, so that each invocation starts
+     *  with everything still to be sent: push goes from the generated
+     *  repository to an empty remote, and fetch from a remote holding the
+     *  generated repository into an empty one. */
+    @State(Scope.Benchmark)
+    public static class Remote {
+        Path full;
+        Path empty;
+        Path remote;
+
+        @Setup(Level.Trial)
+        public void create(Repo repo) throws IOException {
+            remote = repo.scratch.resolve("remote").resolve(".gitlet");
+            full = repo.scratch.resolve("full");
+            empty = repo.scratch.resolve("empty");
+            new Repository().addRemote("origin", remote.getParent().toString());
+            SyntheticRepo.copy(repo.gitletDir(), full);
+            SyntheticRepo.delete(repo.gitletDir());
+            new Repository().init();
+            new Repository().addRemote("origin", remote.getParent().toString());
+            SyntheticRepo.copy(repo.gitletDir(), empty);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class PushTarget {
+        @Setup(Level.Trial)
+        public void useFull(Repo repo, Remote remote) throws IOException {
+            SyntheticRepo.copy(remote.full, repo.gitletDir());
+        }
+
+        @Setup(Level.Invocation)
+        public void emptyRemote(Remote remote) throws IOException {
+            SyntheticRepo.copy(remote.empty, remote.remote);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class FetchSource {
+        @Setup(Level.Trial)
+        public void fillRemote(Remote remote) throws IOException {
+            SyntheticRepo.copy(remote.full, remote.remote);
+        }
+
+        @Setup(Level.Invocation)
+        public void emptyLocal(Repo repo, Remote remote) throws IOException {
+            SyntheticRepo.copy(remote.empty, repo.gitletDir());
+        }
+    }
+
+    @Benchmark
+    public void add(Repo repo, Modified modified) {
+        new Repository().add(modified.paths);
+    }
+
+    @Benchmark
+    public void addAll(Repo repo, Modified modified) {
+        new Repository().add(".");
+    }
+
+    @Benchmark
+    public void commit(Repo repo, Staged staged) {
+        new Repository().commit("Benchmark commit");
+    }
+
+    @Benchmark
+    public void status(Repo repo) {
+        new Repository().status();
+    }
+
+    @Benchmark
+    public void log(Repo repo) {
+        new Repository().log();
+    }
+
+    @Benchmark
+    public void checkoutBranch(Repo repo, Alternating branches) {
+        new Repository().checkoutBranch(branches.next());
+    }
+
+    @Benchmark
+    public void merge(Repo repo, Unmerged unmerged) {
+        new Repository().merge("branch-1");
+    }
+
+    @Benchmark
+    public void push(Repo repo, PushTarget target) {
+        new Repository().push("origin", "master");
+    }
+
+    @Benchmark
+    public void fetch(Repo repo, FetchSource source) {
+        new Repository().fetch("origin", "master");
+    }
+}
@@ -0,0 +1,129 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of writing files into an ObjectStore and reading them back
+ *  out at each zlib level, which shows what a core.compression setting
+ *  trades in CPU for I/O. The files are every plain file under the
+ *  directory given as the parameter dir, as in "-p dir=/path/to/src", or,
+ *  by default, those of a repository made by SyntheticRepo with the
+ *  parameters files and fileSize. The size the objects take on disk at
+ *  each level is printed at the end of its trial.
+ *
+ *  @author Nathan Lee
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompressionBenchmark {
+
+    @Param({"0", "1", "2", "3", "4", "5", "6", "7", "8", "9"})
+    public int level;
+
+    @Param("")
+    public String dir;
+
+    @Param("1000")
+    public int files;
+    @Param("1024")
+    public int fileSize;
+
+    /** The directory holding the stores and any generated files. */
+    private Path scratch;
+    private List<File> inputs;
+    private long rawSize;
+
+    /** A store holding every input, and their ids, for read. */
+    private ObjectStore full;
+    private List<ObjectId> ids;
+    private File restored;
+
+    /** An empty store for each invocation of write. */
+    private ObjectStore empty;
+
+    @Setup(Level.Trial)
+    public void create() throws IOException {
+        scratch = Files.createTempDirectory("gitlet-bench");
+        Path source;
+        if (dir.isEmpty()) {
+            source = scratch.resolve("work");
+            Files.createDirectories(source);
+            SyntheticRepo.useDirectory(source.toFile());
+            new SyntheticRepo(files, fileSize, 1, 0).generate();
+        } else {
+            source = Path.of(dir);
+        }
+        inputs = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(source)) {
+            for (Path path : paths.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                if (!source.relativize(path).startsWith(".gitlet")) {
+                    inputs.add(path.toFile());
+                    rawSize += path.toFile().length();
+                }
+            }
+        }
+        full = new ObjectStore(scratch.resolve("full").toFile(), level);
+        ids = new ArrayList<>();
+        for (File file : inputs) {
+            ids.add(full.writeFile(file));
+        }
+        restored = scratch.resolve("restored").toFile();
+    }
+
+    @Setup(Level.Invocation)
+    public void emptyStore() throws IOException {
+        Path path = scratch.resolve("objects");
+        SyntheticRepo.delete(path);
+        empty = new ObjectStore(path.toFile(), level);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        long stored;
+        try (Stream<Path> paths = Files.walk(scratch.resolve("full"))) {
+            stored = paths.filter(Files::isRegularFile).mapToLong(p -> p.toFile().length()).sum();
+        }
+        System.out.printf("%nlevel %d: %d files, %d bytes stored as %d (%.1f%%)%n", level,
+                          inputs.size(), rawSize, stored, 100.0 * stored / Math.max(rawSize, 1));
+        SyntheticRepo.delete(scratch);
+    }
+
+    @Benchmark
+    public void write() {
+        for (File file : inputs) {
+            empty.writeFile(file);
+        }
+    }
+
+    @Benchmark
+    public void read() {
+        for (ObjectId id : ids) {
+            full.restore(id, restored);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Benchmarks of the binary format commits are stored in, on a line of
+ *  synthetic commits whose length is the parameter commits: encoding and
+ *  decoding every commit in memory, and loading every commit from a packed
+ *  store on disk, as log and global-log do. The encoded size is printed at
+ *  the end of the trial.
+ *
+ *  @author Nathan Lee
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FormatBenchmark {
+
+    @Param("50000")
+    public int commits;
+
+    private List<Commit> history;
+    private List<byte[]> encoded;
+    private long size;
+
+    /** The directory holding the packed store of the commits. */
+    private Path scratch;
+    private File dir;
+
+    @Setup(Level.Trial)
+    public void create() throws IOException {
+        history = new ArrayList<>();
+        encoded = new ArrayList<>();
+        ObjectId parent = null;
+        for (int i = 0; i < commits; i += 1) {
+            Commit commit = new Commit("Synthetic commit number " + i + " of the benchmark",
+                                       parent, i + 1, ObjectId.hash("tree " + i));
+            history.add(commit);
+            encoded.add(commit.toBytes());
+            size += encoded.get(i).length;
+            parent = commit.getHash();
+        }
+
+        scratch = Files.createTempDirectory("gitlet-bench");
+        dir = scratch.resolve("commits").toFile();
+        ObjectStore store = new ObjectStore(dir, Config.DEFAULT_COMPRESSION);
+        for (int i = 0; i < commits; i += 1) {
+            store.put(history.get(i).getHash(), encoded.get(i));
+        }
+        store.repack(new ArrayList<>());
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        System.out.printf("%n%d commits encoded in %d bytes%n", commits, size);
+        SyntheticRepo.delete(scratch);
+    }
+
+    @Benchmark
+    public void encode(Blackhole sink) {
+        for (Commit commit : history) {
+            sink.consume(commit.toBytes());
+        }
+    }
+
+    @Benchmark
+    public void decode(Blackhole sink) {
+        for (byte[] bytes : encoded) {
+            sink.consume(Commit.parse(bytes));
+        }
+    }
+
+    /** Reads every commit through a store opened afresh, as a command
+     *  does. */
+    @Benchmark
+    public void load(Blackhole sink) {
+        ObjectStore store = new ObjectStore(dir, Config.DEFAULT_COMPRESSION);
+        for (Commit commit : history) {
+            sink.consume(Commit.parse(store.read(commit.getHash())));
+        }
+    }
+}
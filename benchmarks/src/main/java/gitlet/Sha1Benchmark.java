@@ -0,0 +1,46 @@
+package gitlet;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of Utils.sha1 on contents of SIZE bytes, from the size of a
+ *  commit record up to a large file.
+ *
+ *  @author Nathan Lee
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Sha1Benchmark {
+
+    @Param({"64", "4096", "1048576"})
+    public int size;
+
+    private byte[] contents;
+
+    @Setup
+    public void create() {
+        contents = new byte[size];
+        new Random(61).nextBytes(contents);
+    }
+
+    @Benchmark
+    public String bytes() {
+        return Utils.sha1(contents);
+    }
+}
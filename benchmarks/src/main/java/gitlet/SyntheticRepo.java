@@ -0,0 +1,216 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/** Generates repositories of a given shape for benchmarks, whose main
+ *  program may be invoked as follows:
+ *      java gitlet.SyntheticRepo DIR FILES FILESIZE DEPTH BRANCHES
+ *  The repository has FILES text files of about FILESIZE bytes, 100 to a
+ *  directory, added in one commit, followed by DEPTH - 1 more commits on
+ *  master that each change 1% of the files. BRANCHES side branches, named
+ *  branch-1, branch-2 and so on, fork from master at evenly spaced points
+ *  and get DEPTH / 10 commits of their own (at least one). The contents
+ *  depend only on the parameters and SEED, so every run builds the same
+ *  history except for commit times.
+ *
+ *  Repository works on the directory named by the system property
+ *  user.dir when it is first loaded, so a process can only generate or
+ *  use one repository, and must call useDirectory before anything else
+ *  touches Repository.
+ *
+ *  @author Nathan Lee
+ */
+public class SyntheticRepo {
+
+    private static final long SEED = 61;
+
+    private static final int FILES_PER_DIR = 100;
+
+    private static final int LINE_LENGTH = 60;
+
+    private int files;
+    private int fileSize;
+    private int depth;
+    private int branches;
+    private Random random;
+
+    public SyntheticRepo(int files, int fileSize, int depth, int branches) {
+        this.files = files;
+        this.fileSize = fileSize;
+        this.depth = Math.max(depth, 1);
+        this.branches = branches;
+        random = new Random(SEED);
+    }
+
+    public static void main(String... args) throws IOException {
+        if (args.length != 5) {
+            System.out.println("Usage: java gitlet.SyntheticRepo "
+                               + "DIR FILES FILESIZE DEPTH BRANCHES");
+            return;
+        }
+        File dir = new File(args[0]);
+        dir.mkdirs();
+        useDirectory(dir);
+        new SyntheticRepo(Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                          Integer.parseInt(args[3]), Integer.parseInt(args[4])).generate();
+    }
+
+    /** Makes DIR the working directory of every Repository made in this
+     *  process. */
+    public static void useDirectory(File dir) {
+        System.setProperty("user.dir", dir.getAbsolutePath());
+        if (!Repository.CWD.getAbsolutePath().equals(dir.getAbsolutePath())) {
+            throw new IllegalStateException("Repository was loaded before useDirectory");
+        }
+    }
+
+    /** Returns the path of file number I. */
+    public static String path(int i) {
+        return "dir" + (i / FILES_PER_DIR) + "/file" + i + ".txt";
+    }
+
+    /** Creates the repository in the working directory, which must not
+     *  already have one. */
+    public void generate() {
+        PrintStream stdout = quiet();
+        try {
+            Repository repo = new Repository();
+            repo.init();
+            List<String> all = new ArrayList<>();
+            for (int i = 0; i < files; i += 1) {
+                write(path(i), text(fileSize));
+                all.add(path(i));
+            }
+            new Repository().add(all.toArray(new String[0]));
+            new Repository().commit("Add " + files + " files");
+
+            List<Integer> forks = new ArrayList<>();
+            for (int b = 1; b <= branches; b += 1) {
+                forks.add(b * depth / (branches + 1));
+            }
+            for (int c = 1; c < depth; c += 1) {
+                for (int b = 0; b < forks.size(); b += 1) {
+                    if (forks.get(b) == c) {
+                        new Repository().branch("branch-" + (b + 1));
+                    }
+                }
+                change("Change " + c + " on master");
+            }
+            for (int b = 0; b < forks.size(); b += 1) {
+                if (forks.get(b) >= depth) {
+                    new Repository().branch("branch-" + (b + 1));
+                }
+            }
+
+            for (int b = 1; b <= branches; b += 1) {
+                new Repository().checkoutBranch("branch-" + b);
+                for (int c = 0; c < Math.max(depth / 10, 1); c += 1) {
+                    change("Change " + c + " on branch-" + b);
+                }
+                new Repository().checkoutBranch("master");
+            }
+        } finally {
+            System.setOut(stdout);
+        }
+    }
+
+    /** Rewrites part of 1% of the files, at least one, and commits them
+     *  with MESSAGE. */
+    public void change(String message) {
+        new Repository().add(touch(Math.max(files / 100, 1)));
+        new Repository().commit(message);
+    }
+
+    /** Rewrites one line in each of COUNT files chosen at random, and
+     *  returns their paths. */
+    public String[] touch(int count) {
+        String[] paths = new String[count];
+        for (int i = 0; i < count; i += 1) {
+            String path = path(random.nextInt(files));
+            File file = Utils.join(Repository.CWD, path);
+            String text = Utils.readContentsAsString(file);
+            int line = random.nextInt(Math.max(text.length() / (LINE_LENGTH + 1), 1));
+            int start = Math.min(line * (LINE_LENGTH + 1), text.length());
+            int end = Math.min(start + LINE_LENGTH, text.length());
+            write(path, text.substring(0, start) + text(end - start).trim()
+                        + text.substring(end));
+            paths[i] = path;
+        }
+        return paths;
+    }
+
+    /** Returns about SIZE bytes of random lower-case lines. */
+    private String text(int size) {
+        StringBuilder result = new StringBuilder(size + LINE_LENGTH);
+        while (result.length() < size) {
+            for (int i = 0; i < LINE_LENGTH && result.length() < size; i += 1) {
+                result.append((char) ('a' + random.nextInt(26)));
+            }
+            result.append('\n');
+        }
+        return result.toString();
+    }
+
+    /** Writes CONTENTS to the working file PATH. Unlike Utils.writeContents
+     *  this doesn't wait for the disk, since generated files are
+     *  throwaway. */
+    private static void write(String path, String contents) {
+        File file = Utils.join(Repository.CWD, path);
+        file.getParentFile().mkdirs();
+        try {
+            Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Sends what commands print to nowhere, and returns the old standard
+     *  output. */
+    public static PrintStream quiet() {
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream(), false,
+                                      StandardCharsets.UTF_8));
+        return stdout;
+    }
+
+    /** Replaces the directory TO with a copy of the directory FROM. */
+    public static void copy(Path from, Path to) throws IOException {
+        delete(to);
+        try (Stream<Path> paths = Files.walk(from)) {
+            for (Path path : paths.collect(Collectors.toList())) {
+                Path target = to.resolve(from.relativize(path).toString());
+                if (Files.isDirectory(path)) {
+                    Files.createDirectories(target);
+                } else {
+                    Files.copy(path, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    /** Deletes ROOT and everything under it, if it exists. */
+    public static void delete(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder())
+                                  .collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/** The binary format in which commits, the stage, the index and the list of
+ *  remotes are stored. Each record starts with a four-byte header,
+ *      'G' 'L' <kind> <version>
+ *  followed by its fields as written by DataOutputStream. Strings are
+ *  written as their length in UTF-8 bytes followed by the bytes, with -1
+ *  standing for null, and 40-digit ids as their 20 raw bytes. A reader
+ *  accepts every version up to the one it knows, so later versions can add
+ *  fields at the end.
+ *
+ *  @author Nathan Lee
+ */
+class BinaryFormat {
+
+    static final byte COMMIT = 'C';
+    static final byte STAGE = 'S';
+    static final byte INDEX = 'I';
+    static final byte REMOTES = 'R';
+
+    private static final byte MAGIC0 = 'G';
+    private static final byte MAGIC1 = 'L';
+
+    private BinaryFormat() {
+    }
+
+    /** Returns a stream writing into BYTES, having written the header of a
+     *  record of the given KIND and VERSION. */
+    static DataOutputStream writer(ByteArrayOutputStream bytes, byte kind, int version)
+        throws IOException {
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(MAGIC0);
+        out.writeByte(MAGIC1);
+        out.writeByte(kind);
+        out.writeByte(version);
+        return out;
+    }
+
+    /** Returns a stream reading the fields of CONTENTS, a record of the
+     *  given KIND, positioned after its header, and checks that its version
+     *  is at most MAXVERSION. Throws IllegalArgumentException if it
+     *  isn't such a record. */
+    static DataInputStream reader(byte[] contents, byte kind, int maxVersion) {
+        if (contents.length < 4 || contents[0] != MAGIC0 || contents[1] != MAGIC1
+            || contents[2] != kind) {
+            throw new IllegalArgumentException("not a gitlet record of kind " + (char) kind);
+        }
+        if (contents[3] > maxVersion) {
+            throw Utils.error("Record of kind %c has version %d; this gitlet reads up to %d.",
+                              (char) kind, contents[3], maxVersion);
+        }
+        return new DataInputStream(new ByteArrayInputStream(contents, 4, contents.length - 4));
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.available()) {
+            throw new IllegalArgumentException("corrupt gitlet record");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeId(DataOutputStream out, ObjectId id) throws IOException {
+        id.write(out);
+    }
+
+    static ObjectId readId(DataInputStream in) throws IOException {
+        return ObjectId.read(in);
+    }
+}
@@ -1,26 +1,29 @@
 package gitlet;
 
-import java.io.Serializable;
-
-public class Branch implements Serializable {
+public class Branch {
 
     private String name;
-    private String commit;
+    private ObjectId commit;
 
     public Branch(String name, Commit commit) {
         this.name = name;
-        this.commit = commit.getShortHash();
+        this.commit = commit.getHash();
+    }
+
+    public Branch(String name, ObjectId commit) {
+        this.name = name;
+        this.commit = commit;
     }
 
     public String getName() {
         return name;
     }
 
-    public String getCommit() {
+    public ObjectId getCommit() {
         return commit;
     }
 
-    public void switchPointer(String newCommit) {
+    public void switchPointer(ObjectId newCommit) {
         commit = newCommit;
     }
 }
@@ -0,0 +1,385 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** A bundle: branches and the commits and objects of their history in a
+ *  single file, for moving them between repositories that share no file
+ *  system. A bundle is written and read front to back in one pass:
+ *      the magic "GBDL" and a version number;
+ *      the prerequisites: the number of them and their ids. These are
+ *          commits the bundle leaves out, along with their history, so
+ *          only a repository that has them can take the bundle;
+ *      the refs: the number of them, and the id and name of each;
+ *      the records, each a kind (OBJECT or COMMIT), an id, a length and
+ *          that many bytes of zlib-compressed contents, as they are stored;
+ *      END, and the SHA-1 hash of everything before it.
+ *  Every blob comes before the trees holding it and every tree before its
+ *  commit, and parents come before their children. Taking a bundle
+ *  (unbundle) writes its objects and its commits into one new pack each,
+ *  rather than a file per object.
+ *
+ *  A remote whose path ends in SUFFIX is a bundle: fetch takes a branch
+ *  from it, and push replaces it with a bundle of the same refs, one of
+ *  them moved, that needs no more than the old bundle did.
+ *
+ *  @author Nathan Lee
+ */
+public class Bundle {
+
+    /** The ending of the names of bundles used as remotes. */
+    public static final String SUFFIX = ".bundle";
+
+    static final int MAGIC = 0x4742444c;
+    static final int VERSION = 1;
+
+    /** Kinds of records. */
+    static final byte OBJECT = 0;
+    static final byte COMMIT = 1;
+    static final byte END = 2;
+
+    /** Size of the buffer used to stream the bundle. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The bundle file. */
+    private File file;
+
+    private List<ObjectId> prerequisites;
+
+    /** The commit of each ref, by name, in the order they were written. */
+    private LinkedHashMap<String, ObjectId> refs;
+
+    private Bundle(File file) {
+        this.file = file;
+        prerequisites = new ArrayList<>();
+        refs = new LinkedHashMap<>();
+    }
+
+    /** Returns true if FILE names a bundle rather than a repository. */
+    public static boolean isBundle(File file) {
+        return file.getName().endsWith(SUFFIX);
+    }
+
+    /** Reads the prerequisites and refs of the bundle FILE. */
+    public static Bundle open(File file) {
+        Bundle bundle = new Bundle(file);
+        try (DataInputStream in = bundle.reader()) {
+            bundle.readHeader(in);
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt bundle %s.", file.getName());
+        }
+        return bundle;
+    }
+
+    public List<ObjectId> getPrerequisites() {
+        return Collections.unmodifiableList(prerequisites);
+    }
+
+    public Map<String, ObjectId> getRefs() {
+        return Collections.unmodifiableMap(refs);
+    }
+
+    /** Returns the prerequisites of this bundle that COMMITS lacks. */
+    public List<ObjectId> missing(CommitStore commits) {
+        List<ObjectId> result = new ArrayList<>();
+        for (ObjectId id : prerequisites) {
+            if (!commits.contains(id)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /** Returns true if COMMITS has the commit of every ref of this bundle,
+     *  and so all that the bundle holds. */
+    public boolean isTakenBy(CommitStore commits) {
+        for (ObjectId id : refs.values()) {
+            if (!commits.contains(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Writes REFS, and the commits and objects of their history, to a
+     *  bundle at FILE, replacing any file there. The history of each of
+     *  PREREQUISITES is left out, using the bitmaps of COMMITS for the
+     *  objects in it where there are some, and otherwise the objects of
+     *  the prerequisites themselves. OBJECTS holds the trees and blobs. */
+    public static void write(File file, Map<String, ObjectId> refs,
+                             Collection<ObjectId> prerequisites, CommitStore commits,
+                             ObjectStore objects) {
+        TreeStore trees = new TreeStore(objects);
+        CommitWalker walker = new CommitWalker(commits, CommitWalker.Order.TOPO);
+        for (ObjectId id : refs.values()) {
+            walker.include(id);
+        }
+        HashSet<ObjectId> seen = new HashSet<>();
+        for (ObjectId id : prerequisites) {
+            walker.exclude(id);
+            collect(commits.node(id).getTree(), trees, seen);
+        }
+        CommitBitmaps.Reachable has = null;
+        if (commits.bitmaps() != null && !prerequisites.isEmpty()) {
+            has = commits.bitmaps().reachable(prerequisites, commits, trees);
+        }
+        List<CommitGraph.Node> sending = new ArrayList<>();
+        for (CommitGraph.Node node : walker.nodes()) {
+            sending.add(node);
+        }
+
+        File temp = null;
+        MessageDigest md = Utils.newSha1Digest();
+        try {
+            File dir = file.getAbsoluteFile().getParentFile();
+            temp = File.createTempFile("." + file.getName() + "-", ".tmp", dir);
+            try (DataOutputStream out = new DataOutputStream(new DigestOutputStream(
+                     new BufferedOutputStream(Files.newOutputStream(temp.toPath()), BUFFER_SIZE),
+                     md))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(prerequisites.size());
+                for (ObjectId id : prerequisites) {
+                    id.write(out);
+                }
+                out.writeInt(refs.size());
+                for (Map.Entry<String, ObjectId> ref : refs.entrySet()) {
+                    ref.getValue().write(out);
+                    BinaryFormat.writeString(out, ref.getKey());
+                }
+                /** Parents first, each after everything it points to */
+                for (int i = sending.size() - 1; i >= 0; i -= 1) {
+                    CommitGraph.Node node = sending.get(i);
+                    writeTree(out, node.getTree(), trees, has, seen);
+                    writeRecord(out, COMMIT, node.getHash(), commits.compressed(node.getHash()));
+                }
+                out.writeByte(END);
+                out.flush();
+                out.write(md.digest());
+            }
+            Utils.moveDurably(temp, file);
+        } catch (IOException excp) {
+            if (temp != null) {
+                temp.delete();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Adds each of the commits and objects of this bundle that COMMITS and
+     *  OBJECTS lack to them, reading the bundle once, front to back.
+     *  Everything read is hashed on the way, and what arrives is held back in
+     *  new packs until the hash at the end is found to be that of everything
+     *  before it. Each commit and object is also hashed again as it is added,
+     *  since the hash at the end only shows that the file is whole, and each
+     *  commit must have its tree and parents in the bundle ahead of it or in
+     *  COMMITS and OBJECTS already, as must the commit of every ref, and a
+     *  generation one more than its parents' largest. A bundle that fails any
+     *  of these is refused with a GitletException and the packs being written
+     *  are thrown away. The objects become visible before the commits, so a
+     *  commit is never seen without its tree. */
+    public void unbundle(CommitStore commits, ObjectStore objects) {
+        try {
+            readRecords(commits, objects);
+        } catch (GitletException | IllegalArgumentException excp) {
+            objects.abandonIncoming();
+            commits.abandonIncoming();
+            throw excp;
+        }
+        objects.finishIncoming();
+        commits.finishIncoming();
+    }
+
+    /** Adds the records of this bundle to COMMITS and OBJECTS, checking
+     *  them and the hash at the end as unbundle() describes. The header is
+     *  read again, so the refs checked are those of the file as it is. */
+    private void readRecords(CommitStore commits, ObjectStore objects) {
+        /** Not the shared digest, which the stores use for each record */
+        MessageDigest md = Utils.newSha1Digest();
+        HashSet<ObjectId> readObjects = new HashSet<>();
+        /** The generation of each commit read, by id */
+        HashMap<ObjectId, Integer> readCommits = new HashMap<>();
+        try (HashingInputStream hashed = new HashingInputStream(
+                 new BufferedInputStream(Files.newInputStream(file.toPath()), BUFFER_SIZE), md);
+             DataInputStream in = new DataInputStream(hashed)) {
+            prerequisites.clear();
+            refs.clear();
+            readHeader(in);
+            for (byte kind = in.readByte(); kind != END; kind = in.readByte()) {
+                ObjectId id = ObjectId.read(in);
+                long length = in.readLong();
+                if (kind == OBJECT) {
+                    objects.addIncoming(id, in, length);
+                    readObjects.add(id);
+                } else if (kind == COMMIT) {
+                    Commit commit = commits.addIncoming(id, in, length);
+                    int generation;
+                    if (commit == null) {
+                        generation = generation(readCommits, commits, id);
+                    } else {
+                        generation = commit.getGeneration();
+                        int first = generation(readCommits, commits, commit.getParent());
+                        int second = generation(readCommits, commits, commit.getSecondParent());
+                        if (!has(readObjects, objects, commit.getTree()) || first < 0
+                            || second < 0 || generation != 1 + Math.max(first, second)) {
+                            throw Utils.error("Corrupt bundle %s.", file.getName());
+                        }
+                    }
+                    readCommits.put(id, generation);
+                } else {
+                    throw Utils.error("Corrupt bundle %s.", file.getName());
+                }
+            }
+            hashed.on(false);
+            byte[] trailer = in.readNBytes(ObjectId.SIZE);
+            if (!Arrays.equals(md.digest(), trailer) || in.read() != -1) {
+                throw Utils.error("Corrupt bundle %s.", file.getName());
+            }
+        } catch (IOException | IllegalArgumentException excp) {
+            /** The stores report a record cut short this way */
+            throw Utils.error("Corrupt bundle %s.", file.getName());
+        }
+        for (ObjectId tip : refs.values()) {
+            if (generation(readCommits, commits, tip) < 0) {
+                throw Utils.error("Corrupt bundle %s.", file.getName());
+            }
+        }
+    }
+
+    /** Returns the generation of the commit ID as READ holds it, or as
+     *  COMMITS does if READ lacks it. Returns 0 if ID is null, for no
+     *  commit, and -1 if neither has it. The generation isn't part of a
+     *  commit's id, so one read from a bundle is only trusted once it is
+     *  found to follow from its parents'. */
+    private static int generation(HashMap<ObjectId, Integer> read, CommitStore commits,
+                                  ObjectId id) {
+        if (id == null) {
+            return 0;
+        }
+        Integer generation = read.get(id);
+        if (generation != null) {
+            return generation;
+        }
+        CommitGraph.Node node = commits.node(id);
+        return node == null ? -1 : node.getGeneration();
+    }
+
+    /** Returns true if ID is in READ or in OBJECTS. */
+    private static boolean has(HashSet<ObjectId> read, ObjectStore objects, ObjectId id) {
+        return read.contains(id) || objects.contains(id);
+    }
+
+    /** Reads the prerequisites and refs from IN. */
+    private void readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw Utils.error("%s is not a bundle.", file.getName());
+        }
+        for (int count = in.readInt(); count > 0; count -= 1) {
+            prerequisites.add(ObjectId.read(in));
+        }
+        for (int count = in.readInt(); count > 0; count -= 1) {
+            ObjectId id = ObjectId.read(in);
+            refs.put(BinaryFormat.readString(in), id);
+        }
+    }
+
+    private DataInputStream reader() throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath()),
+                                                           BUFFER_SIZE));
+    }
+
+    /** Writes a record of every tree and blob under the tree ID that isn't
+     *  in HAS or SEEN, each blob before the tree holding it, and adds them
+     *  to SEEN. HAS may be null. */
+    private static void writeTree(DataOutputStream out, ObjectId id, TreeStore trees,
+                                  CommitBitmaps.Reachable has, HashSet<ObjectId> seen)
+        throws IOException {
+        if (!seen.add(id) || has != null && has.contains(id)) {
+            return;
+        }
+        for (Tree.Entry entry : trees.get(id).entries().values()) {
+            if (entry.isTree()) {
+                writeTree(out, entry.getId(), trees, has, seen);
+            } else if (seen.add(entry.getId()) && !(has != null && has.contains(entry.getId()))) {
+                writeRecord(out, OBJECT, entry.getId(), trees.getStore().compressed(entry.getId()));
+            }
+        }
+        writeRecord(out, OBJECT, id, trees.getStore().compressed(id));
+    }
+
+    /** Writes a record of KIND for the object ID, whose compressed contents
+     *  are the remaining bytes of COMPRESSED. */
+    private static void writeRecord(DataOutputStream out, byte kind, ObjectId id,
+                                    ByteBuffer compressed) throws IOException {
+        out.writeByte(kind);
+        id.write(out);
+        out.writeLong(compressed.remaining());
+        if (compressed.hasArray()) {
+            out.write(compressed.array(), compressed.arrayOffset() + compressed.position(),
+                      compressed.remaining());
+            return;
+        }
+        byte[] buffer = new byte[Math.min(BUFFER_SIZE, compressed.remaining())];
+        while (compressed.hasRemaining()) {
+            int count = Math.min(buffer.length, compressed.remaining());
+            compressed.get(buffer, 0, count);
+            out.write(buffer, 0, count);
+        }
+    }
+
+    /** Adds the tree ID and everything under it to SEEN. */
+    private static void collect(ObjectId id, TreeStore trees, HashSet<ObjectId> seen) {
+        if (!seen.add(id)) {
+            return;
+        }
+        for (Tree.Entry entry : trees.get(id).entries().values()) {
+            if (entry.isTree()) {
+                collect(entry.getId(), trees, seen);
+            } else {
+                seen.add(entry.getId());
+            }
+        }
+    }
+
+    /** A DigestInputStream that hashes the bytes it skips too, by reading
+     *  them, so that records skipped by the stores are part of the hash. */
+    private static class HashingInputStream extends DigestInputStream {
+
+        HashingInputStream(InputStream in, MessageDigest md) {
+            super(in, md);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(Math.max(n, 0), BUFFER_SIZE)];
+            long skipped = 0;
+            while (skipped < n) {
+                int count = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                if (count < 0) {
+                    break;
+                }
+                skipped += count;
+            }
+            return skipped;
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package gitlet;
 
-import java.io.Serializable;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.Date;
-import java.util.HashMap;
 import java.text.SimpleDateFormat;
 
 /** Represents a gitlet commit object.
@@ -10,7 +12,11 @@ import java.text.SimpleDateFormat;
  *
  *  @author Nathan Lee
  */
-public class Commit implements Serializable {
+public class Commit {
+
+    /** The version of the binary format written by toBytes. */
+    private static final int FORMAT_VERSION = 1;
+
     /**
      *
      * List all instance variables of the Commit class here with a useful
@@ -18,57 +24,139 @@ public class Commit implements Serializable {
      * variable is used. We've provided one example for `message`.
      */
 
-    /** The sha hash code of this Commit. */
-    private String hash;
-    private String shortHash;
+    /** The id of this Commit: the SHA-1 hash of its tree, parents, time and
+     *  message. */
+    private ObjectId hash;
 
     /** The timestamp of this Commit. */
     private String timestamp;
+    /** The same time in milliseconds since the epoch, for ordering commits. */
+    private long time;
 
     /** The message of this Commit. */
     private String message;
 
     /** The hash code of the parent Commit. */
-    private String parent;
+    private ObjectId parent;
 
     /** Second parent for merge commits */
-    private String secondParent;
-    /** The files that this Commit tracks. */
-    private HashMap<String, Blob> files;
+    private ObjectId secondParent;
+
+    /** One more than the largest generation of the parents of this Commit,
+     *  and 1 for the initial commit. A commit's ancestors all have smaller
+     *  generations, which lets history walks stop early. */
+    private int generation;
+    /** The id of the tree of the files that this Commit tracks. */
+    private ObjectId tree;
 
-    public Commit(String msg, String parentCommit, HashMap<String, Blob> trackedFiles) {
+    public Commit(String msg, ObjectId parentCommit, int gen, ObjectId treeId) {
         parent = parentCommit;
         secondParent = null;
+        generation = gen;
         message = msg;
         SimpleDateFormat sdf = new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z");
 
+        Date date;
         if (parentCommit == null) {
-            timestamp = sdf.format(new Date(0));
+            date = new Date(0);
         } else {
-            timestamp = sdf.format(new Date());
+            date = new Date();
         }
+        timestamp = sdf.format(date);
+        time = date.getTime();
 
-        hash = Utils.sha1(message + timestamp);
-        shortHash = hash.substring(0, 6);
-        files = trackedFiles;
+        tree = treeId;
+        hash = computeHash();
     }
 
-    public Commit(String msg, String parentCommit, String secondParentCommit,
-                  HashMap<String, Blob> trackedFiles) {
+    public Commit(String msg, ObjectId parentCommit, ObjectId secondParentCommit, int gen,
+                  ObjectId treeId) {
         parent = parentCommit;
         secondParent = secondParentCommit;
+        generation = gen;
         message = msg;
         SimpleDateFormat sdf = new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z");
 
+        Date date;
         if (parentCommit == null) {
-            timestamp = sdf.format(new Date(0));
+            date = new Date(0);
         } else {
-            timestamp = sdf.format(new Date());
+            date = new Date();
+        }
+        timestamp = sdf.format(date);
+        time = date.getTime();
+
+        tree = treeId;
+        hash = computeHash();
+    }
+
+    /** A commit made at TIMESTAMP, which is WHEN in milliseconds since the
+     *  epoch, as when converting one made by an older version. */
+    Commit(String msg, ObjectId parentCommit, ObjectId secondParentCommit, int gen,
+           ObjectId treeId, String stamp, long when) {
+        parent = parentCommit;
+        secondParent = secondParentCommit;
+        generation = gen;
+        message = msg;
+        timestamp = stamp;
+        time = when;
+        tree = treeId;
+        hash = computeHash();
+    }
+
+    /** A commit whose fields are filled in by parse. */
+    private Commit() {
+    }
+
+    /** Returns this Commit in the binary format (see BinaryFormat): its id,
+     *  its tree id, the number of its parents and their ids, its generation,
+     *  its time, its timestamp and its message. The id is kept so that
+     *  loading a commit doesn't have to hash it again. */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = BinaryFormat.writer(bytes, BinaryFormat.COMMIT,
+                                                        FORMAT_VERSION)) {
+            BinaryFormat.writeId(out, hash);
+            BinaryFormat.writeId(out, tree);
+            out.writeByte(parent == null ? 0 : secondParent == null ? 1 : 2);
+            if (parent != null) {
+                BinaryFormat.writeId(out, parent);
+            }
+            if (secondParent != null) {
+                BinaryFormat.writeId(out, secondParent);
+            }
+            out.writeInt(generation);
+            out.writeLong(time);
+            BinaryFormat.writeString(out, timestamp);
+            BinaryFormat.writeString(out, message);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
         }
+        return bytes.toByteArray();
+    }
 
-        hash = Utils.sha1(message + timestamp);
-        shortHash = hash.substring(0, 6);
-        files = trackedFiles;
+    /** Returns the commit stored as CONTENTS by toBytes. */
+    public static Commit parse(byte[] contents) {
+        Commit commit = new Commit();
+        try (DataInputStream in = BinaryFormat.reader(contents, BinaryFormat.COMMIT,
+                                                      FORMAT_VERSION)) {
+            commit.hash = BinaryFormat.readId(in);
+            commit.tree = BinaryFormat.readId(in);
+            int parents = in.readByte();
+            if (parents >= 1) {
+                commit.parent = BinaryFormat.readId(in);
+            }
+            if (parents == 2) {
+                commit.secondParent = BinaryFormat.readId(in);
+            }
+            commit.generation = in.readInt();
+            commit.time = in.readLong();
+            commit.timestamp = BinaryFormat.readString(in);
+            commit.message = BinaryFormat.readString(in);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return commit;
     }
 
     public String getMessage() {
@@ -79,28 +167,43 @@ public class Commit implements Serializable {
         return timestamp;
     }
 
-    public String getParent() {
-        return parent;
+    public long getTime() {
+        return time;
     }
 
-    public HashMap<String, Blob> getFiles() {
-        return files;
+    public ObjectId getParent() {
+        return parent;
     }
 
-    public String getHash() {
-        return hash;
+    public ObjectId getTree() {
+        return tree;
     }
 
-    public String getShortHash() {
-        return shortHash;
+    public ObjectId getHash() {
+        return hash;
     }
 
-    public boolean hasFile(String fileName) {
-        return files.containsKey(fileName);
+    /** Returns the hash of everything that makes up this Commit. */
+    private ObjectId computeHash() {
+        StringBuilder contents = new StringBuilder();
+        contents.append("tree ").append(tree).append('\n');
+        if (parent != null) {
+            contents.append("parent ").append(parent).append('\n');
+        }
+        if (secondParent != null) {
+            contents.append("parent ").append(secondParent).append('\n');
+        }
+        contents.append("time ").append(time).append('\n');
+        contents.append('\n').append(message);
+        return ObjectId.hash(contents.toString());
     }
 
-    public Blob getFile(String fileName) {
-        return files.get(fileName);
+    /** Returns true if ID is both the id this Commit was stored with and
+     *  the hash of what it holds, as for a commit from a bundle. The
+     *  generation isn't hashed, so whoever takes such a commit must check
+     *  it against the parents' too, as Bundle does. */
+    public boolean hasHash(ObjectId id) {
+        return id.equals(hash) && id.equals(computeHash());
     }
 
     public boolean sameCommit(Commit commit) {
@@ -114,7 +217,11 @@ public class Commit implements Serializable {
         return secondParent != null;
     }
 
-    public String getSecondParent() {
+    public ObjectId getSecondParent() {
         return secondParent;
     }
+
+    public int getGeneration() {
+        return generation;
+    }
 }
@@ -0,0 +1,374 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/** Reachability bitmaps of a repository, .gitlet/commits/bitmaps, written
+ *  by gc next to the commit-graph. Every tree and blob reachable from a
+ *  commit at the time is given a position, and a few commits get a bitmap
+ *  with a bit set for every object in their history: the tips of the
+ *  branches and every commit whose generation is a multiple of SPACING.
+ *  The file holds
+ *      the magic "CBMP" and a version number;
+ *      the ids of the objects, as an IdTable, which gives their positions;
+ *      the ids of the commits with bitmaps, as an IdTable;
+ *      the offset in the file of the bitmap of the objects that are trees;
+ *      the offset in the file of the bitmap of each of those commits;
+ *      the bitmaps, compressed (see writeBitmap).
+ *
+ *  reachable() gives the objects in the history of any commit: it walks
+ *  back from the commit until it meets commits with bitmaps, ORs in their
+ *  bitmaps and only reads the trees of the commits in between, which are
+ *  never more than about SPACING per line of history. push and fetch take
+ *  the objects in the history of the commit being sent AND NOT those in
+ *  the history of the commits the other side has, and copy only those
+ *  (see ObjectTransfer).
+ *
+ *  @author Nathan Lee
+ */
+public class CommitBitmaps {
+
+    static final String FILE = "bitmaps";
+
+    static final int MAGIC = 0x43424d50;
+    static final int VERSION = 2;
+
+    /** Commits whose generation is a multiple of this get a bitmap. */
+    static final int SPACING = 100;
+
+    /** Where the object ids start: after the magic and version. */
+    private static final int OBJECTS_START = 8;
+
+    /** The largest run or number of literal words a marker can give. */
+    private static final long MAX_RUN = 0xffffffffL;
+    private static final int MAX_LITERALS = 0x7fffffff;
+
+    /** The contents of the bitmap file. */
+    private MappedByteBuffer data;
+
+    /** The objects with positions, and the commits with bitmaps. */
+    private IdTable objects;
+    private IdTable commits;
+
+    /** Where the offsets of the bitmaps start. */
+    private int offsetsStart;
+
+    /** The positions of the objects that are trees. */
+    private BitSet treeBits;
+
+    private CommitBitmaps(MappedByteBuffer data) {
+        this.data = data;
+        objects = new IdTable(data, OBJECTS_START);
+        commits = new IdTable(data, objects.end());
+        offsetsStart = commits.end() + 4;
+        treeBits = readBitmap(data, data.getInt(commits.end()));
+    }
+
+    /** Returns the bitmaps in FILE, or null if there are none or they
+     *  aren't bitmaps this version can read. */
+    public static CommitBitmaps open(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException excp) {
+            return null;
+        }
+        if (data.limit() < OBJECTS_START + 2 * IdTable.size(0) || data.getInt(0) != MAGIC
+            || data.getInt(4) != VERSION) {
+            return null;
+        }
+        return new CommitBitmaps(data);
+    }
+
+    /** Writes bitmaps of the commits TIPS, and of every commit whose
+     *  generation is a multiple of SPACING, to FILE, replacing any there.
+     *  Positions are given to every object reachable from a commit in
+     *  COMMITS, whose trees are in TREES. */
+    public static void write(File file, CommitStore commits, TreeStore trees,
+                             Collection<ObjectId> tips) {
+        List<Commit> all = commits.all();
+        HashSet<ObjectId> seen = new HashSet<>();
+        HashSet<ObjectId> treeIds = new HashSet<>();
+        for (Commit commit : all) {
+            collectObjects(commit.getTree(), trees, seen, treeIds);
+        }
+        List<ObjectId> objectIds = new ArrayList<>(new TreeSet<>(seen));
+        HashMap<ObjectId, Integer> positions = new HashMap<>();
+        BitSet treeBits = new BitSet();
+        for (int i = 0; i < objectIds.size(); i += 1) {
+            positions.put(objectIds.get(i), i);
+            if (treeIds.contains(objectIds.get(i))) {
+                treeBits.set(i);
+            }
+        }
+
+        /** Each bitmap is built from those of the selected commits below
+         *  it, so they are made oldest first. Each is compressed as soon as
+         *  it is built, so only one is ever held uncompressed. */
+        List<Commit> selected = new ArrayList<>();
+        for (Commit commit : all) {
+            if (tips.contains(commit.getHash()) || commit.getGeneration() % SPACING == 0) {
+                selected.add(commit);
+            }
+        }
+        selected.sort((a, b) -> Integer.compare(a.getGeneration(), b.getGeneration()));
+        HashMap<ObjectId, byte[]> bitmaps = new HashMap<>();
+        for (Commit commit : selected) {
+            BitSet bits = reach(List.of(commit.getHash()), commits, trees,
+                                id -> bitmaps.containsKey(id)
+                                    ? readBitmap(ByteBuffer.wrap(bitmaps.get(id)), 0) : null,
+                                id -> positions.getOrDefault(id, -1));
+            bitmaps.put(commit.getHash(), compress(bits));
+        }
+
+        List<ObjectId> commitIds = new ArrayList<>(new TreeSet<>(bitmaps.keySet()));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            IdTable.write(out, objectIds);
+            IdTable.write(out, commitIds);
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            DataOutputStream bodyOut = new DataOutputStream(body);
+            int bodyStart = OBJECTS_START + IdTable.size(objectIds.size())
+                + IdTable.size(commitIds.size()) + 4 + 4 * commitIds.size();
+            out.writeInt(bodyStart);
+            writeBitmap(bodyOut, treeBits);
+            for (ObjectId id : commitIds) {
+                out.writeInt(bodyStart + body.size());
+                bodyOut.write(bitmaps.get(id));
+            }
+            body.writeTo(out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.writeContents(file, bytes.toByteArray());
+    }
+
+    /** Returns the objects in the history of the commits IDS, which are in
+     *  COMMITS and whose trees are in TREES. Only objects with positions
+     *  are included; those added since the bitmaps were written are not. */
+    public Reachable reachable(Collection<ObjectId> ids, CommitStore commits, TreeStore trees) {
+        BitSet bits = reach(ids, commits, trees, this::bitmap, objects::find);
+        return new Reachable(bits);
+    }
+
+    /** The objects in the history of a commit. */
+    public class Reachable {
+        private BitSet bits;
+
+        private Reachable(BitSet bits) {
+            this.bits = bits;
+        }
+
+        /** Returns true if the object ID is known to be in the history. An
+         *  object without a position is never known to be. */
+        public boolean contains(ObjectId id) {
+            int pos = objects.find(id);
+            return pos >= 0 && bits.get(pos);
+        }
+
+        /** Returns the objects in this history and not in OTHER, which may
+         *  be null. */
+        public Reachable andNot(Reachable other) {
+            BitSet result = (BitSet) bits.clone();
+            if (other != null) {
+                result.andNot(other.bits);
+            }
+            return new Reachable(result);
+        }
+
+        /** Returns the ids of the blobs in the history. */
+        public List<ObjectId> blobs() {
+            BitSet result = (BitSet) bits.clone();
+            result.andNot(treeBits);
+            return ids(result);
+        }
+
+        /** Returns the ids of the trees in the history. */
+        public List<ObjectId> trees() {
+            BitSet result = (BitSet) bits.clone();
+            result.and(treeBits);
+            return ids(result);
+        }
+
+        private List<ObjectId> ids(BitSet positions) {
+            List<ObjectId> result = new ArrayList<>(positions.cardinality());
+            for (int pos = positions.nextSetBit(0); pos >= 0;
+                 pos = positions.nextSetBit(pos + 1)) {
+                result.add(objects.get(pos));
+            }
+            return result;
+        }
+    }
+
+    /** Returns the bitmap of the commit ID, or null if it has none. */
+    private BitSet bitmap(ObjectId id) {
+        int pos = commits.find(id);
+        if (pos < 0) {
+            return null;
+        }
+        return readBitmap(data, data.getInt(offsetsStart + 4 * pos));
+    }
+
+    /** Returns the positions, as given by POSITIONOF, of the objects in the
+     *  history of the commits IDS. The walk goes back through the parents of
+     *  each commit, and stops at commits that BITMAPOF has a bitmap for. */
+    private static BitSet reach(Collection<ObjectId> ids, CommitStore commits, TreeStore trees,
+                                Function<ObjectId, BitSet> bitmapOf,
+                                ToIntFunction<ObjectId> positionOf) {
+        BitSet bits = new BitSet();
+        HashSet<ObjectId> seenCommits = new HashSet<>();
+        HashSet<ObjectId> seenTrees = new HashSet<>();
+        Deque<ObjectId> pending = new ArrayDeque<>();
+        pending.addAll(ids);
+        while (!pending.isEmpty()) {
+            ObjectId next = pending.pop();
+            if (!seenCommits.add(next)) {
+                continue;
+            }
+            BitSet bitmap = bitmapOf.apply(next);
+            if (bitmap != null) {
+                bits.or(bitmap);
+                continue;
+            }
+            CommitGraph.Node node = commits.node(next);
+            if (node == null) {
+                continue;
+            }
+            markTree(node.getTree(), trees, positionOf, bits, seenTrees);
+            if (node.getParent() != null) {
+                pending.push(node.getParent());
+            }
+            if (node.getSecondParent() != null) {
+                pending.push(node.getSecondParent());
+            }
+        }
+        return bits;
+    }
+
+    /** Sets the bit of the tree ID and of everything under it in BITS.
+     *  Trees whose bits are already set are skipped, along with everything
+     *  under them; trees without a position are walked once, by SEEN. */
+    private static void markTree(ObjectId id, TreeStore trees, ToIntFunction<ObjectId> positionOf,
+                                 BitSet bits, HashSet<ObjectId> seen) {
+        int pos = positionOf.applyAsInt(id);
+        if (pos >= 0 ? bits.get(pos) : !seen.add(id)) {
+            return;
+        }
+        for (Tree.Entry entry : trees.get(id).entries().values()) {
+            if (entry.isTree()) {
+                markTree(entry.getId(), trees, positionOf, bits, seen);
+            } else {
+                int blob = positionOf.applyAsInt(entry.getId());
+                if (blob >= 0) {
+                    bits.set(blob);
+                }
+            }
+        }
+        if (pos >= 0) {
+            bits.set(pos);
+        }
+    }
+
+    /** Adds the tree ID and everything under it to SEEN, and the trees
+     *  among them to TREEIDS. */
+    private static void collectObjects(ObjectId id, TreeStore trees, HashSet<ObjectId> seen,
+                                       HashSet<ObjectId> treeIds) {
+        if (!seen.add(id)) {
+            return;
+        }
+        treeIds.add(id);
+        for (Tree.Entry entry : trees.get(id).entries().values()) {
+            if (entry.isTree()) {
+                collectObjects(entry.getId(), trees, seen, treeIds);
+            } else {
+                seen.add(entry.getId());
+            }
+        }
+    }
+
+    /** Writes BITS to OUT as a sequence of markers, each followed by
+     *  literal words. A marker is a long whose top bit is the value of a
+     *  run of identical words, whose next 32 bits are the length of the
+     *  run, and whose low 31 bits are the number of literal words that
+     *  follow it, so the long runs of zeroes in the bitmaps of old commits
+     *  and of ones in those of new commits take a word each. */
+    static void writeBitmap(DataOutputStream out, BitSet bits) throws IOException {
+        long[] words = bits.toLongArray();
+        out.writeInt(words.length);
+        int i = 0;
+        while (i < words.length) {
+            long run = 0;
+            boolean ones = words[i] == -1L;
+            while (i < words.length && run < MAX_RUN
+                   && (words[i] == 0 && !ones || words[i] == -1L && ones)) {
+                run += 1;
+                i += 1;
+            }
+            int literals = 0;
+            while (i + literals < words.length && literals < MAX_LITERALS
+                   && words[i + literals] != 0 && words[i + literals] != -1L) {
+                literals += 1;
+            }
+            out.writeLong((ones ? 1L << 63 : 0) | run << 31 | literals);
+            for (int j = 0; j < literals; j += 1) {
+                out.writeLong(words[i + j]);
+            }
+            i += literals;
+        }
+    }
+
+    /** Returns BITS as written by writeBitmap. */
+    private static byte[] compress(BitSet bits) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeBitmap(out, bits);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Reads a bitmap written by writeBitmap at OFFSET in BUFFER. */
+    static BitSet readBitmap(ByteBuffer buffer, int offset) {
+        long[] words = new long[buffer.getInt(offset)];
+        int at = offset + 4;
+        int i = 0;
+        while (i < words.length) {
+            long marker = buffer.getLong(at);
+            at += 8;
+            long fill = marker < 0 ? -1L : 0;
+            int run = (int) ((marker >>> 31) & MAX_RUN);
+            int literals = (int) (marker & MAX_LITERALS);
+            for (int j = 0; j < run; j += 1) {
+                words[i++] = fill;
+            }
+            for (int j = 0; j < literals; j += 1) {
+                words[i++] = buffer.getLong(at);
+                at += 8;
+            }
+        }
+        return BitSet.valueOf(words);
+    }
+}
@@ -0,0 +1,204 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+/** The commit-graph of a repository, .gitlet/commits/graph, written by gc.
+ *  It holds what walking history needs of every commit, in fixed-width
+ *  records, so that log, merge, push and fetch can walk history without
+ *  inflating and parsing the commits themselves:
+ *      the magic "CGPH" and a version number;
+ *      the ids of the commits, as an IdTable;
+ *      a record for each commit, in the same order: the id of its tree,
+ *          the positions of its first and second parents in the table (-1
+ *          for none), its generation and its time.
+ *  The file is memory-mapped and nothing is read from it until a commit is
+ *  looked up. Commits made since the last gc are not in it, and are read
+ *  from their own files as before (see CommitStore.node).
+ *
+ *  @author Nathan Lee
+ */
+public class CommitGraph {
+
+    static final String FILE = "graph";
+
+    static final int MAGIC = 0x43475048;
+    static final int VERSION = 1;
+
+    /** Where the ids start: after the magic and version. */
+    private static final int IDS_START = 8;
+
+    /** The size of a record: tree id, two parents, generation and time. */
+    private static final int RECORD_SIZE = ObjectId.SIZE + 4 + 4 + 4 + 8;
+
+    /** The position standing for no parent. */
+    private static final int NONE = -1;
+
+    /** The contents of the graph file. */
+    private MappedByteBuffer data;
+
+    /** The ids of the commits in the graph. */
+    private IdTable ids;
+
+    /** Where the records start. */
+    private int recordsStart;
+
+    private CommitGraph(MappedByteBuffer data) {
+        this.data = data;
+        ids = new IdTable(data, IDS_START);
+        recordsStart = ids.end();
+    }
+
+    /** Returns the graph in FILE, or null if there is none or it isn't a
+     *  commit-graph this version can read, in which case commits are read
+     *  from their own files. */
+    public static CommitGraph open(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException excp) {
+            return null;
+        }
+        if (data.limit() < IDS_START + IdTable.size(0) || data.getInt(0) != MAGIC
+            || data.getInt(4) != VERSION) {
+            return null;
+        }
+        CommitGraph graph = new CommitGraph(data);
+        if (data.limit() != graph.recordsStart + RECORD_SIZE * graph.ids.count()) {
+            return null;
+        }
+        return graph;
+    }
+
+    /** Writes the graph of COMMITS to FILE, replacing any graph there.
+     *  COMMITS must include the parents of every commit in it; if one is
+     *  missing, no graph is written and FILE is deleted. */
+    public static void write(File file, Collection<Commit> commits) {
+        HashMap<ObjectId, Commit> byId = new HashMap<>();
+        for (Commit commit : commits) {
+            byId.put(commit.getHash(), commit);
+        }
+        List<ObjectId> sorted = new ArrayList<>(byId.keySet());
+        sorted.sort(null);
+        HashMap<ObjectId, Integer> positions = new HashMap<>();
+        for (int i = 0; i < sorted.size(); i += 1) {
+            positions.put(sorted.get(i), i);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            IdTable.write(out, sorted);
+            for (ObjectId id : sorted) {
+                Commit commit = byId.get(id);
+                commit.getTree().write(out);
+                for (ObjectId parent : new ObjectId[] {commit.getParent(),
+                                                       commit.getSecondParent()}) {
+                    Integer pos = parent == null ? Integer.valueOf(NONE) : positions.get(parent);
+                    if (pos == null) {
+                        file.delete();
+                        return;
+                    }
+                    out.writeInt(pos);
+                }
+                out.writeInt(commit.getGeneration());
+                out.writeLong(commit.getTime());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.writeContents(file, bytes.toByteArray());
+    }
+
+    /** Returns the number of commits in the graph. */
+    public int size() {
+        return ids.count();
+    }
+
+    public boolean contains(ObjectId id) {
+        return ids.find(id) >= 0;
+    }
+
+    /** Returns the node of the commit ID, or null if it isn't in the
+     *  graph. */
+    public Node get(ObjectId id) {
+        int pos = ids.find(id);
+        return pos < 0 ? null : node(pos, id);
+    }
+
+    /** Returns the node at position POS, whose id is ID. */
+    private Node node(int pos, ObjectId id) {
+        int record = recordsStart + RECORD_SIZE * pos;
+        int first = data.getInt(record + ObjectId.SIZE);
+        int second = data.getInt(record + ObjectId.SIZE + 4);
+        return new Node(id, ObjectId.fromBuffer(data, record),
+                        first == NONE ? null : ids.get(first),
+                        second == NONE ? null : ids.get(second),
+                        data.getInt(record + ObjectId.SIZE + 8),
+                        data.getLong(record + ObjectId.SIZE + 12));
+    }
+
+    /** What walking history needs of a commit: its id, tree, parents,
+     *  generation and time, but not its message. */
+    public static class Node {
+        private ObjectId hash;
+        private ObjectId tree;
+        private ObjectId parent;
+        private ObjectId secondParent;
+        private int generation;
+        private long time;
+
+        Node(ObjectId hash, ObjectId tree, ObjectId parent, ObjectId secondParent,
+             int generation, long time) {
+            this.hash = hash;
+            this.tree = tree;
+            this.parent = parent;
+            this.secondParent = secondParent;
+            this.generation = generation;
+            this.time = time;
+        }
+
+        /** The node of COMMIT. */
+        Node(Commit commit) {
+            this(commit.getHash(), commit.getTree(), commit.getParent(),
+                 commit.getSecondParent(), commit.getGeneration(), commit.getTime());
+        }
+
+        public ObjectId getHash() {
+            return hash;
+        }
+
+        public ObjectId getTree() {
+            return tree;
+        }
+
+        public ObjectId getParent() {
+            return parent;
+        }
+
+        public ObjectId getSecondParent() {
+            return secondParent;
+        }
+
+        public int getGeneration() {
+            return generation;
+        }
+
+        public long getTime() {
+            return time;
+        }
+    }
+}
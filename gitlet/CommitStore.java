@@ -0,0 +1,203 @@
+package gitlet;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/** The commits of a repository, kept under .gitlet/commits in the same
+ *  layout as the object store: loose commits fanned out by the first two
+ *  characters of their ids, and packs written by gc. Commits are only read
+ *  from disk when they are first asked for, so a command pays for the
+ *  commits it touches rather than for the whole history. Walks of the
+ *  history go through nodes, which come from the commit-graph written by
+ *  gc where it has them, so they need not read the commits at all.
+ *
+ *  @author Nathan Lee
+ */
+public class CommitStore {
+
+    /** The serialized commits, by id. */
+    private ObjectStore store;
+
+    /** Commits already read or written during this command, by id. */
+    private HashMap<ObjectId, Commit> loaded;
+
+    /** The file holding the commit-graph. */
+    private File graphFile;
+
+    /** The commit-graph, once opened, or null if it hasn't been. */
+    private CommitGraph graph;
+    private boolean graphOpened;
+
+    /** The file holding the reachability bitmaps, and the bitmaps once
+     *  opened. */
+    private File bitmapFile;
+    private CommitBitmaps bitmaps;
+    private boolean bitmapsOpened;
+
+    public CommitStore(File dir, int level) {
+        store = new ObjectStore(dir, level);
+        loaded = new HashMap<>();
+        graphFile = Utils.join(dir, CommitGraph.FILE);
+        bitmapFile = Utils.join(dir, CommitBitmaps.FILE);
+    }
+
+    /** Creates the directory of this store if it doesn't already exist. */
+    public void create() {
+        store.create();
+    }
+
+    /** Returns the commit with the given ID, or null if there is none. */
+    public Commit get(ObjectId id) {
+        if (id == null) {
+            return null;
+        }
+        Commit commit = loaded.get(id);
+        if (commit == null) {
+            if (!store.contains(id)) {
+                return null;
+            }
+            commit = Commit.parse(store.read(id));
+            loaded.put(id, commit);
+        }
+        return commit;
+    }
+
+    /** Returns the node of the commit ID, or null if there is none. The
+     *  commit itself is only read if it isn't in the commit-graph. */
+    public CommitGraph.Node node(ObjectId id) {
+        if (id == null) {
+            return null;
+        }
+        Commit commit = loaded.get(id);
+        if (commit == null) {
+            CommitGraph.Node node = graph() == null ? null : graph.get(id);
+            if (node != null) {
+                return node;
+            }
+            commit = get(id);
+            if (commit == null) {
+                return null;
+            }
+        }
+        return new CommitGraph.Node(commit);
+    }
+
+    public boolean contains(ObjectId id) {
+        return loaded.containsKey(id) || graph() != null && graph.contains(id)
+            || store.contains(id);
+    }
+
+    /** Writes COMMIT to the store. Commits never change once made, so this
+     *  is only done once per commit. */
+    public void put(Commit commit) {
+        ObjectId id = commit.getHash();
+        loaded.put(id, commit);
+        store.put(id, commit.toBytes());
+    }
+
+    /** Returns the compressed bytes of the commit ID as they are stored, for
+     *  a bundle. */
+    public ByteBuffer compressed(ObjectId id) {
+        return store.compressed(id);
+    }
+
+    /** Adds the commit ID, whose compressed bytes are the next LENGTH bytes
+     *  of IN, to a new pack, as when taking a bundle. The bytes must hold a
+     *  commit whose id, hashed again from what it holds, is ID; anything
+     *  else is refused with a GitletException. The commits are seen once
+     *  finishIncoming() is called. Returns the commit, or null if the store
+     *  already has it and the bytes were skipped. */
+    public Commit addIncoming(ObjectId id, InputStream in, long length) {
+        if (store.skipIncoming(id, in, length)) {
+            return null;
+        }
+        byte[] compressed = ObjectStore.readIncoming(in, length);
+        Commit commit;
+        try {
+            commit = Commit.parse(Utils.inflate(compressed));
+        } catch (IllegalArgumentException | GitletException excp) {
+            throw ObjectStore.mismatch(id);
+        }
+        if (!commit.hasHash(id)) {
+            throw ObjectStore.mismatch(id);
+        }
+        store.addChecked(id, compressed);
+        return commit;
+    }
+
+    public void finishIncoming() {
+        store.finishIncoming();
+    }
+
+    public void abandonIncoming() {
+        store.abandonIncoming();
+    }
+
+    /** Returns the ids of all commits whose ids start with PREFIX, in order.
+     *  This is how abbreviated commit ids are resolved: a unique prefix
+     *  yields exactly one id. */
+    public List<ObjectId> resolve(String prefix) {
+        if (prefix.isEmpty() || !ObjectId.isHexPrefix(prefix)) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(store.idsStartingWith(prefix));
+    }
+
+    /** Returns every commit in the store. Used by the commands that really
+     *  need the whole history, such as global-log and find. */
+    public List<Commit> all() {
+        List<Commit> result = new ArrayList<>();
+        for (ObjectId id : store.ids()) {
+            result.add(get(id));
+        }
+        return result;
+    }
+
+    /** Moves every commit into a single pack. */
+    public void repack() {
+        store.repack(Collections.emptyList());
+    }
+
+    /** Writes the commit-graph of every commit in the store, replacing the
+     *  one there was. */
+    public void writeGraph() {
+        CommitGraph.write(graphFile, all());
+        graph = null;
+        graphOpened = false;
+    }
+
+    /** Writes reachability bitmaps of the commits TIPS and of every
+     *  SPACING-th generation, replacing the ones there were. TREES holds the
+     *  trees of the commits. */
+    public void writeBitmaps(TreeStore trees, Collection<ObjectId> tips) {
+        CommitBitmaps.write(bitmapFile, this, trees, tips);
+        bitmaps = null;
+        bitmapsOpened = false;
+    }
+
+    /** Returns the reachability bitmaps, opening them the first time, or
+     *  null if there are none. */
+    public CommitBitmaps bitmaps() {
+        if (!bitmapsOpened) {
+            bitmaps = CommitBitmaps.open(bitmapFile);
+            bitmapsOpened = true;
+        }
+        return bitmaps;
+    }
+
+    /** Returns the commit-graph, opening it the first time, or null if there
+     *  is none. */
+    private CommitGraph graph() {
+        if (!graphOpened) {
+            graph = CommitGraph.open(graphFile);
+            graphOpened = true;
+        }
+        return graph;
+    }
+}
@@ -0,0 +1,171 @@
+package gitlet;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/** Walks the history of one or more commits, one commit at a time.
+ *
+ *  The walk keeps its own queue instead of recursing, so it handles
+ *  histories of any depth. It works on the nodes of the commits, which
+ *  come from the commit-graph where it has them, and only reads a commit
+ *  when next returns it; callers that need no more than ids, trees and
+ *  parents can walk the nodes alone.
+ *  Every commit is returned once, however many paths lead to it. Commits
+ *  reachable from an excluded commit are skipped, which gives the commits
+ *  in one history but not in another (like "git rev-list A ^B").
+ *
+ *  A walker can be used for a single walk:
+ *
+ *        for (Commit c : new CommitWalker(store, Order.TOPO).include(id)) {
+ *            ...
+ *        }
+ *
+ *  or, without reading the commits:
+ *
+ *        for (CommitGraph.Node n : new CommitWalker(...).include(id).nodes()) {
+ *            ...
+ *        }
+ *
+ *  @author Nathan Lee
+ */
+public class CommitWalker implements Iterator<Commit>, Iterable<Commit> {
+
+    /** The orders in which a walker can return commits. */
+    public enum Order {
+        /** Children before parents, by decreasing generation. */
+        TOPO,
+        /** Newest commit first. */
+        DATE
+    }
+
+    /** State of a commit that has been reached. */
+    private static final int EXCLUDED = 1;
+    private static final int DONE = 2;
+
+    private CommitStore store;
+    private PriorityQueue<CommitGraph.Node> queue;
+    /** The state of every commit reached so far, by id. */
+    private HashMap<ObjectId, Integer> reached;
+    /** Number of queued commits that aren't excluded. The walk ends once
+     *  only excluded commits are left. */
+    private int interesting;
+    private boolean firstParentOnly;
+    private CommitGraph.Node next;
+
+    public CommitWalker(CommitStore store, Order order) {
+        this.store = store;
+        reached = new HashMap<>();
+        Comparator<CommitGraph.Node> byGeneration =
+            Comparator.comparingInt(CommitGraph.Node::getGeneration).reversed();
+        Comparator<CommitGraph.Node> byTime =
+            Comparator.comparingLong(CommitGraph.Node::getTime).reversed();
+        if (order == Order.TOPO) {
+            queue = new PriorityQueue<>(byGeneration.thenComparing(byTime));
+        } else {
+            queue = new PriorityQueue<>(byTime.thenComparing(byGeneration));
+        }
+    }
+
+    /** Adds the commit ID and its history to the walk. */
+    public CommitWalker include(ObjectId id) {
+        reach(id, false);
+        return this;
+    }
+
+    /** Leaves the commit ID and its history out of the walk. Exclusion is
+     *  exact in TOPO order; in DATE order it relies on commit times never
+     *  going backwards. */
+    public CommitWalker exclude(ObjectId id) {
+        reach(id, true);
+        return this;
+    }
+
+    /** Only follows the first parent of merge commits. */
+    public CommitWalker firstParent() {
+        firstParentOnly = true;
+        return this;
+    }
+
+    @Override
+    public Iterator<Commit> iterator() {
+        return this;
+    }
+
+    /** Returns the walk as nodes rather than commits. */
+    public Iterable<CommitGraph.Node> nodes() {
+        return () -> new Iterator<CommitGraph.Node>() {
+            @Override
+            public boolean hasNext() {
+                return CommitWalker.this.hasNext();
+            }
+
+            @Override
+            public CommitGraph.Node next() {
+                return nextNode();
+            }
+        };
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null && interesting > 0) {
+            CommitGraph.Node commit = queue.poll();
+            ObjectId id = commit.getHash();
+            int state = reached.get(id);
+            reached.put(id, state | DONE);
+            boolean excluded = (state & EXCLUDED) != 0;
+            if (!excluded) {
+                interesting -= 1;
+                next = commit;
+            }
+            reach(commit.getParent(), excluded);
+            if (!firstParentOnly) {
+                reach(commit.getSecondParent(), excluded);
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public Commit next() {
+        return store.get(nextNode().getHash());
+    }
+
+    /** Returns the node of the next commit of the walk. */
+    public CommitGraph.Node nextNode() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        CommitGraph.Node result = next;
+        next = null;
+        return result;
+    }
+
+    /** Queues the commit ID the first time it is reached, and marks it as
+     *  EXCLUDED if it is reachable from an excluded commit. */
+    private void reach(ObjectId id, boolean excluded) {
+        if (id == null) {
+            return;
+        }
+        Integer state = reached.get(id);
+        if (state == null) {
+            CommitGraph.Node commit = store.node(id);
+            if (commit == null) {
+                return;
+            }
+            reached.put(id, excluded ? EXCLUDED : 0);
+            queue.add(commit);
+            if (!excluded) {
+                interesting += 1;
+            }
+        } else if (excluded && (state & EXCLUDED) == 0) {
+            reached.put(id, state | EXCLUDED);
+            if ((state & DONE) == 0) {
+                interesting -= 1;
+            }
+        }
+    }
+}
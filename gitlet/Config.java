@@ -0,0 +1,100 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Properties;
+
+/** The settings of a repository, kept as "key=value" lines in
+ *  .gitlet/config. Missing settings fall back to their defaults.
+ *
+ *  @author Nathan Lee
+ */
+public class Config {
+
+    /** The zlib level (0-9) used to compress objects and commits. */
+    public static final String COMPRESSION = "core.compression";
+    public static final int DEFAULT_COMPRESSION = 6;
+
+    /** The number of threads used to scan and hash the working directory
+     *  and to copy objects in push and fetch; 0 means one per core and 1
+     *  does everything on a single thread. The system property
+     *  gitlet.threads, if set, takes precedence. */
+    public static final String THREADS = "core.threads";
+    public static final String THREADS_PROPERTY = "gitlet.threads";
+
+    /** How long, in milliseconds, a command waits for another one running
+     *  in the same repository to finish before giving up. */
+    public static final String LOCK_TIMEOUT = "core.lockTimeout";
+    public static final int DEFAULT_LOCK_TIMEOUT = 10000;
+
+    private Properties properties;
+
+    /** Reads the settings in FILE, if it exists. */
+    public Config(File file) {
+        properties = new Properties();
+        if (file.isFile()) {
+            try (InputStream in = Files.newInputStream(file.toPath())) {
+                properties.load(in);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Returns the setting KEY as an int, or DEFAULTVALUE if it isn't set. */
+    public int getInt(String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException excp) {
+            throw Utils.error("Bad value for %s in config: %s", key, value);
+        }
+    }
+
+    /** Returns the compression level to use for new objects. */
+    public int compressionLevel() {
+        int level = getInt(COMPRESSION, DEFAULT_COMPRESSION);
+        if (level < 0 || level > 9) {
+            throw Utils.error("%s must be between 0 and 9.", COMPRESSION);
+        }
+        return level;
+    }
+
+    /** Returns the number of threads to scan and hash the working directory,
+     *  and to copy objects, with. */
+    public int threads() {
+        int threads = getInt(THREADS, 0);
+        String property = System.getProperty(THREADS_PROPERTY);
+        if (property != null) {
+            try {
+                threads = Integer.parseInt(property.trim());
+            } catch (NumberFormatException excp) {
+                throw Utils.error("Bad value for %s: %s", THREADS_PROPERTY, property);
+            }
+        }
+        if (threads < 0) {
+            throw Utils.error("%s must not be negative.", THREADS);
+        }
+        return threads == 0 ? Runtime.getRuntime().availableProcessors() : threads;
+    }
+
+    public void set(String key, String value) {
+        properties.setProperty(key, value);
+    }
+
+    public void save(File file) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            properties.store(out, "Gitlet repository settings");
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.writeContents(file, out.toByteArray());
+    }
+}
@@ -0,0 +1,350 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Date;
+
+/** A long-running server that keeps one repository loaded in memory and
+ *  runs the commands sent to it, so that scripts running many commands
+ *  don't pay for loading the repository each time.
+ *
+ *  "java gitlet.Main daemon" serves the repository in the current
+ *  directory until "java gitlet.Main daemon stop". While it runs, the port
+ *  it listens on and a random token are kept in .gitlet/daemon, and Main
+ *  sends every command run in that directory to it, printing what it
+ *  prints. The daemon only listens on the loopback interface and ignores
+ *  requests without the token, which only the owner of the repository can
+ *  read. Running with -Dgitlet.daemon=false skips the daemon.
+ *
+ *  Before each command the daemon checks whether the files of the
+ *  repository were changed by anything else since its last command, and
+ *  loads it again if so. After a command that failed, it loads it again
+ *  regardless, since what the failed command left in memory may not match
+ *  what it wrote.
+ *
+ *  @author Nathan Lee
+ */
+public class Daemon {
+
+    /** The file in .gitlet holding the port and token of a running daemon. */
+    public static final String FILE = "daemon";
+
+    /** Set to false to run every command in its own process. */
+    public static final String PROPERTY = "gitlet.daemon";
+
+    /** The file in .gitlet to which the daemon appends the stack traces of
+     *  commands that failed. */
+    public static final String LOG = "daemon.log";
+
+    /** Replies to a request: the command ran and its output follows, or the
+     *  client is in another directory and should run the command itself. */
+    private static final int SERVED = 0;
+    private static final int WRONG_DIRECTORY = 1;
+
+    /** Kinds of frame in the reply to a command that was served: something
+     *  the command printed, or the exception that stopped it. Each frame is
+     *  its kind, a length and that many bytes, and the reply ends when the
+     *  daemon closes the connection. */
+    private static final int OUTPUT = 0;
+    private static final int FAILURE = 1;
+
+    /** How long to wait for a connection, or for a client to send its
+     *  request, in milliseconds. */
+    private static final int TIMEOUT = 5000;
+
+    private static final int TOKEN_BYTES = 16;
+
+    /** The repository being served, or null if it must be loaded again. */
+    private Repository repo;
+
+    /** Repository.stateStamp() as of the end of the last command. */
+    private String stamp;
+
+    private String token;
+
+    private String directory;
+
+    private boolean stopped;
+
+    private Daemon() {
+    }
+
+    /** Serves the repository in the current directory until stopped. */
+    public static void serve() {
+        if (!Repository.GITLET_DIR.exists()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        if (readPortFile() != null && forward(new String[] {"daemon", "ping"})) {
+            System.out.println("A daemon is already running.");
+            return;
+        }
+        new Daemon().run();
+    }
+
+    /** Sends ARGS to the daemon serving the current directory, if there is
+     *  one, and copies what it prints to standard output. Returns false if
+     *  no daemon could run the command, which should then be run here. If
+     *  the command failed with an exception other than GitletException,
+     *  throws it again here, so that the client fails as the command would
+     *  have on its own. */
+    public static boolean forward(String[] args) {
+        if ("false".equals(System.getProperty(PROPERTY))) {
+            return false;
+        }
+        String[] portFile = readPortFile();
+        if (portFile == null) {
+            return false;
+        }
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                                 Integer.parseInt(portFile[0])), TIMEOUT);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeUTF(portFile[1]);
+            out.writeUTF(currentDirectory());
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            if (in.read() != SERVED) {
+                return false;
+            }
+            String failure = null;
+            for (int kind = in.read(); kind >= 0; kind = in.read()) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                if (kind == OUTPUT) {
+                    System.out.write(bytes, 0, bytes.length);
+                } else {
+                    failure = new String(bytes, StandardCharsets.UTF_8);
+                }
+            }
+            System.out.flush();
+            if (failure != null) {
+                throw new CommandFailure(failure);
+            }
+            return true;
+        } catch (IOException | NumberFormatException excp) {
+            /** A daemon that has gone away leaves its file behind. */
+            return false;
+        }
+    }
+
+    /** Returns the port and token in .gitlet/daemon, or null if there is no
+     *  such file. */
+    private static String[] readPortFile() {
+        File file = Utils.join(Repository.GITLET_DIR, FILE);
+        try {
+            String[] fields = Utils.readContentsAsString(file).trim().split(" ");
+            return fields.length == 2 ? fields : null;
+        } catch (IllegalArgumentException excp) {
+            return null;
+        }
+    }
+
+    private static String currentDirectory() {
+        try {
+            return Repository.CWD.getCanonicalPath();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    private void run() {
+        byte[] secret = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(secret);
+        token = Utils.toHex(secret);
+        directory = currentDirectory();
+        File portFile = Utils.join(Repository.GITLET_DIR, FILE);
+        try (ServerSocket socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            writePortFile(portFile, socket.getLocalPort());
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> removePortFile(portFile)));
+            while (!stopped) {
+                try (Socket client = socket.accept()) {
+                    handle(client);
+                } catch (IOException excp) {
+                    /** One bad client doesn't stop the daemon. */
+                    continue;
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            removePortFile(portFile);
+        }
+    }
+
+    /** Writes the port and token to FILE, readable only by its owner where
+     *  the file system allows it. */
+    private void writePortFile(File file, int port) throws IOException {
+        File temp = File.createTempFile("daemon", null, Repository.GITLET_DIR);
+        try {
+            Files.setPosixFilePermissions(temp.toPath(),
+                                          PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException excp) {
+            temp.setReadable(false, false);
+            temp.setReadable(true, true);
+        }
+        Files.write(temp.toPath(), (port + " " + token + "\n").getBytes(StandardCharsets.UTF_8));
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Deletes FILE if it still belongs to this daemon. */
+    private void removePortFile(File file) {
+        if (file.isFile() && Utils.readContentsAsString(file).trim().endsWith(" " + token)) {
+            file.delete();
+        }
+    }
+
+    /** Reads one request from CLIENT and runs it, sending back everything
+     *  the command prints. */
+    private void handle(Socket client) throws IOException {
+        client.setSoTimeout(TIMEOUT);
+        DataInputStream in = new DataInputStream(client.getInputStream());
+        byte[] given = in.readUTF().getBytes(StandardCharsets.UTF_8);
+        if (!MessageDigest.isEqual(given, token.getBytes(StandardCharsets.UTF_8))) {
+            return;
+        }
+        String clientDirectory = in.readUTF();
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = in.readUTF();
+        }
+        OutputStream out = client.getOutputStream();
+        if (!clientDirectory.equals(directory)) {
+            out.write(WRONG_DIRECTORY);
+            return;
+        }
+        out.write(SERVED);
+
+        DataOutputStream frames = new DataOutputStream(out);
+        PrintStream stdout = System.out;
+        PrintStream output = new PrintStream(new BufferedOutputStream(new OutputFrames(frames)),
+                                             false);
+        System.setOut(output);
+        RuntimeException failure;
+        try {
+            failure = execute(args);
+        } finally {
+            output.flush();
+            System.setOut(stdout);
+        }
+        if (failure != null) {
+            byte[] bytes = failure.toString().getBytes(StandardCharsets.UTF_8);
+            frames.writeByte(FAILURE);
+            frames.writeInt(bytes.length);
+            frames.write(bytes);
+            frames.flush();
+        }
+    }
+
+    /** Runs the command ARGS, loading the repository again first if
+     *  anything else changed it or the last command failed. Returns the exception that stopped the
+     *  command, other than a GitletException, whose message is printed as
+     *  Main prints it, or null if there was none. */
+    private RuntimeException execute(String[] args) {
+        if (args.length >= 1 && args[0].equals("daemon")) {
+            if (args.length == 2 && args[1].equals("stop")) {
+                stopped = true;
+            } else if (args.length != 2 || !args[1].equals("ping")) {
+                System.out.println("A daemon is already running.");
+            }
+            return null;
+        }
+        try {
+            RepositoryLock lock = RepositoryLock.acquire(Repository.GITLET_DIR);
+            try {
+                if (repo == null || !Repository.stateStamp().equals(stamp)) {
+                    repo = new Repository();
+                }
+                Main.run(repo, args);
+                stamp = Repository.stateStamp();
+            } finally {
+                RepositoryLock.release(lock);
+            }
+        } catch (GitletException excp) {
+            /** The command may have stopped halfway, so start afresh. */
+            repo = null;
+            System.out.println(excp.getMessage());
+        } catch (RuntimeException excp) {
+            repo = null;
+            log(args, excp);
+            return excp;
+        }
+        return null;
+    }
+
+    /** Appends the command ARGS and the stack trace of EXCP, which stopped
+     *  it, to the daemon's log. */
+    private static void log(String[] args, RuntimeException excp) {
+        File file = Utils.join(Repository.GITLET_DIR, LOG);
+        try (PrintStream log = new PrintStream(new FileOutputStream(file, true), false,
+                                               StandardCharsets.UTF_8)) {
+            log.println(new Date() + ": " + String.join(" ", args));
+            excp.printStackTrace(log);
+        } catch (IOException ignored) {
+            /** The client still hears of the failure. */
+        }
+    }
+
+    /** Writes everything written to it to the client as OUTPUT frames. */
+    private static class OutputFrames extends OutputStream {
+        private DataOutputStream out;
+
+        OutputFrames(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.writeByte(OUTPUT);
+            out.writeInt(len);
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+
+    /** A failure of a command in the daemon, thrown again by the client.
+     *  It prints as the exception the daemon caught did, and carries no
+     *  stack trace of its own; the daemon's is in its log. */
+    private static class CommandFailure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        CommandFailure(String description) {
+            super(description, null, false, false);
+        }
+
+        @Override
+        public String toString() {
+            return getMessage();
+        }
+    }
+}
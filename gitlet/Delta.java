@@ -0,0 +1,168 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+
+/** Binary deltas between two versions of a file.
+ *
+ *  A delta starts with the lengths of the base and of the result, followed
+ *  by instructions that build the result from left to right:
+ *      COPY (0x80), OFFSET, LENGTH   copies LENGTH bytes of the base starting
+ *                                    at OFFSET;
+ *      N (1-127), then N bytes       inserts those N bytes.
+ *  Lengths and offsets are unsigned varints (7 bits per byte, low bits
+ *  first).
+ *
+ *  Matches are found by indexing the base in BLOCK-byte blocks and rolling a
+ *  hash of the same width over the result, then extending each match as far
+ *  as it goes in both directions.
+ *
+ *  @author Nathan Lee
+ */
+public class Delta {
+
+    /** Width of the blocks matched between base and result. */
+    private static final int BLOCK = 16;
+    /** Multiplier of the rolling hash. */
+    private static final int PRIME = 31;
+    /** The op code of a copy instruction. */
+    private static final int COPY = 0x80;
+    /** The largest number of bytes one insert instruction can hold. */
+    private static final int MAX_INSERT = 0x7f;
+
+    /** Returns a delta that turns BASE into TARGET. */
+    public static byte[] create(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+
+        int highPower = 1;
+        for (int i = 1; i < BLOCK; i += 1) {
+            highPower *= PRIME;
+        }
+
+        int pos = 0;
+        int pending = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (pos + BLOCK <= target.length) {
+            Integer match = blocks.get(h);
+            if (match != null && sameBytes(base, match, target, pos, BLOCK)) {
+                int baseStart = match;
+                int start = pos;
+                while (baseStart > 0 && start > pending
+                       && base[baseStart - 1] == target[start - 1]) {
+                    baseStart -= 1;
+                    start -= 1;
+                }
+                int length = pos - start + BLOCK;
+                while (baseStart + length < base.length && start + length < target.length
+                       && base[baseStart + length] == target[start + length]) {
+                    length += 1;
+                }
+                writeInsert(out, target, pending, start);
+                out.write(COPY);
+                writeVarint(out, baseStart);
+                writeVarint(out, length);
+                pos = start + length;
+                pending = pos;
+                if (pos + BLOCK <= target.length) {
+                    h = hash(target, pos);
+                }
+            } else {
+                if (pos + BLOCK < target.length) {
+                    h = (h - target[pos] * highPower) * PRIME + target[pos + BLOCK];
+                }
+                pos += 1;
+            }
+        }
+        writeInsert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /** Returns the result of applying DELTA to BASE. */
+    public static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        int baseLength = readVarint(delta, pos);
+        int resultLength = readVarint(delta, pos);
+        if (baseLength != base.length) {
+            throw Utils.error("Delta does not match its base.");
+        }
+        byte[] result = new byte[resultLength];
+        int written = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]] & 0xff;
+            pos[0] += 1;
+            if (op == COPY) {
+                int offset = readVarint(delta, pos);
+                int length = readVarint(delta, pos);
+                System.arraycopy(base, offset, result, written, length);
+                written += length;
+            } else {
+                System.arraycopy(delta, pos[0], result, written, op);
+                pos[0] += op;
+                written += op;
+            }
+        }
+        if (written != resultLength) {
+            throw Utils.error("Corrupt delta.");
+        }
+        return result;
+    }
+
+    /** Returns the hash of the BLOCK bytes of DATA starting at START. */
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int i = start; i < start + BLOCK; i += 1) {
+            h = h * PRIME + data[i];
+        }
+        return h;
+    }
+
+    private static boolean sameBytes(byte[] a, int aStart, byte[] b, int bStart, int length) {
+        for (int i = 0; i < length; i += 1) {
+            if (a[aStart + i] != b[bStart + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Writes insert instructions for the bytes of DATA from START up to
+     *  (but not including) END. */
+    private static void writeInsert(ByteArrayOutputStream out, byte[] data, int start, int end) {
+        while (start < end) {
+            int count = Math.min(MAX_INSERT, end - start);
+            out.write(count);
+            out.write(data, start, count);
+            start += count;
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /** Reads a varint from DATA at POS[0], advancing POS[0] past it. */
+    private static int readVarint(byte[] data, int[] pos) {
+        int result = 0;
+        int shift = 0;
+        while (true) {
+            int b = data[pos[0]] & 0xff;
+            pos[0] += 1;
+            result |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+            shift += 7;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package gitlet;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/** A sorted table of ids inside a mapped file, as used by pack indexes and
+ *  the commit-graph:
+ *      a fan-out table of 256 ints, whose entry B is the number of ids
+ *          starting with a byte no greater than B;
+ *      the 20-byte ids, sorted.
+ *  The table is searched where it lies: the fan-out table narrows a lookup
+ *  to the ids sharing its first byte, and a binary search finds it among
+ *  those, comparing ids four bytes at a time without copying them out.
+ *
+ *  @author Nathan Lee
+ */
+class IdTable {
+
+    /** Number of entries in the fan-out table. */
+    static final int FANOUT_SIZE = 256;
+
+    /** The buffer holding the table. */
+    private ByteBuffer buffer;
+
+    /** Where the fan-out table and the ids start in BUFFER. */
+    private int fanoutStart;
+    private int idsStart;
+
+    /** The number of ids. */
+    private int count;
+
+    /** The table starting at offset START of BUFFER, which must be in
+     *  big-endian order. */
+    IdTable(ByteBuffer buffer, int start) {
+        this.buffer = buffer;
+        fanoutStart = start;
+        idsStart = start + 4 * FANOUT_SIZE;
+        count = buffer.getInt(fanoutStart + 4 * (FANOUT_SIZE - 1));
+    }
+
+    /** Returns the size in bytes of a table of COUNT ids. */
+    static int size(int count) {
+        return 4 * FANOUT_SIZE + ObjectId.SIZE * count;
+    }
+
+    /** Writes the table of IDS, which must be sorted, to OUT. */
+    static void write(DataOutputStream out, List<ObjectId> ids) throws IOException {
+        int[] fanout = new int[FANOUT_SIZE];
+        for (ObjectId id : ids) {
+            fanout[id.firstByte()] += 1;
+        }
+        int total = 0;
+        for (int count : fanout) {
+            total += count;
+            out.writeInt(total);
+        }
+        for (ObjectId id : ids) {
+            id.write(out);
+        }
+    }
+
+    int count() {
+        return count;
+    }
+
+    /** Returns the offset in the buffer just past the table. */
+    int end() {
+        return idsStart + ObjectId.SIZE * count;
+    }
+
+    /** Returns the id at position POS. */
+    ObjectId get(int pos) {
+        return ObjectId.fromBuffer(buffer, idsStart + ObjectId.SIZE * pos);
+    }
+
+    /** Returns the position of ID, or -1 if it isn't there. */
+    int find(ObjectId id) {
+        int pos = lowerBound(id);
+        if (pos < count && compareId(pos, id) == 0) {
+            return pos;
+        }
+        return -1;
+    }
+
+    /** Returns the position of the first id that is not less than ID, or
+     *  the number of ids if there is none. Only the ids sharing the first
+     *  byte of ID, as given by the fan-out table, are searched. */
+    int lowerBound(ObjectId id) {
+        int first = id.firstByte();
+        int low = first == 0 ? 0 : buffer.getInt(fanoutStart + 4 * (first - 1));
+        int high = buffer.getInt(fanoutStart + 4 * first);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareId(mid, id) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** Compares the id at position POS with ID, four bytes at a time as
+     *  unsigned values. */
+    private int compareId(int pos, ObjectId id) {
+        int start = idsStart + ObjectId.SIZE * pos;
+        for (int i = 0; i < ObjectId.SIZE / 4; i += 1) {
+            int cmp = Integer.compareUnsigned(buffer.getInt(start + 4 * i), id.word(i));
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,128 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/** A cache of the size, modification time and blob id of working files,
+ *  saved in .gitlet/index. A file whose size and modification time match
+ *  its entry is known to hash to the recorded blob id, so status and add
+ *  only read the files that really changed. Being only a cache, an index
+ *  that can't be read is dropped, and rebuilt as files are hashed.
+ *
+ *  @author Nathan Lee
+ */
+public class Index {
+
+    /** The version of the binary format written by toBytes. */
+    private static final int FORMAT_VERSION = 1;
+
+    /** Files modified this recently (in milliseconds) are never cached, since
+     *  they could still change again without their modification time moving
+     *  on coarse-grained file systems. */
+    private static final long RACY_WINDOW = 2000;
+
+    private HashMap<String, Entry> entries;
+
+    /** True if the entries changed since the index was read or saved. */
+    private boolean changed;
+
+    public Index() {
+        entries = new HashMap<>();
+    }
+
+    /** Returns the recorded blob id of FILE, tracked as FILENAME, or null if
+     *  the file may have changed since it was recorded. */
+    public ObjectId lookup(String fileName, File file) {
+        Entry entry = entries.get(fileName);
+        if (entry != null && entry.size == file.length()
+                && entry.lastModified == file.lastModified()) {
+            return entry.blobId;
+        }
+        return null;
+    }
+
+    /** Records that FILE, tracked as FILENAME, currently hashes to BLOBID. */
+    public void record(String fileName, File file, ObjectId blobId) {
+        long size = file.length();
+        long lastModified = file.lastModified();
+        if (System.currentTimeMillis() - lastModified < RACY_WINDOW) {
+            if (entries.remove(fileName) != null) {
+                changed = true;
+            }
+            return;
+        }
+        entries.put(fileName, new Entry(size, lastModified, blobId));
+        changed = true;
+    }
+
+    public void remove(String fileName) {
+        if (entries.remove(fileName) != null) {
+            changed = true;
+        }
+    }
+
+    public boolean isChanged() {
+        return changed;
+    }
+
+    /** Records that the index was just written out, so that it isn't
+     *  written again until its entries change. */
+    public void saved() {
+        changed = false;
+    }
+
+    /** Returns this Index in the binary format (see BinaryFormat): the
+     *  number of entries, then the path, size, modification time and blob
+     *  id of each. */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = BinaryFormat.writer(bytes, BinaryFormat.INDEX,
+                                                        FORMAT_VERSION)) {
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                BinaryFormat.writeString(out, entry.getKey());
+                out.writeLong(entry.getValue().size);
+                out.writeLong(entry.getValue().lastModified);
+                BinaryFormat.writeId(out, entry.getValue().blobId);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Returns the index stored as CONTENTS by toBytes. */
+    public static Index parse(byte[] contents) {
+        Index index = new Index();
+        try (DataInputStream in = BinaryFormat.reader(contents, BinaryFormat.INDEX,
+                                                      FORMAT_VERSION)) {
+            for (int count = in.readInt(); count > 0; count -= 1) {
+                String path = BinaryFormat.readString(in);
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                index.entries.put(path, new Entry(size, lastModified, BinaryFormat.readId(in)));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return index;
+    }
+
+    /** The cached state of a single working file. */
+    private static class Entry {
+        private long size;
+        private long lastModified;
+        private ObjectId blobId;
+
+        Entry(long size, long lastModified, ObjectId blobId) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.blobId = blobId;
+        }
+    }
+}
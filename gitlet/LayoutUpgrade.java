@@ -0,0 +1,263 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Converts a repository made by the first version of gitlet to the
+ *  current layout, the first time a command opens it. That version kept
+ *      every commit in the file .gitlet/commits, a Java-serialized HashMap
+ *          from the first six digits of each commit's id to the commit,
+ *          which held the name and contents of every file it tracked;
+ *      the branches in .gitlet/branches, and the head commit and current
+ *          branch in head.txt and currentbranch.txt, naming commits by
+ *          those six digits;
+ *      the stage in .gitlet/stage, with the contents of every staged file;
+ *      the remotes in .gitlet/remote, a HashMap from their names to their
+ *          .gitlet directories as Files.
+ *  The contents of the files become blobs, and each commit a tree and a
+ *  commit of the current kind with the same message, time and parents.
+ *  Commit ids are now hashed from what a commit holds, so every commit gets
+ *  a new id, and the branches, head and stage are rewritten to match. The
+ *  list of remotes keeps its names and directories.
+ *
+ *  A conversion cut short is finished by the next command. The new commits
+ *  are written to commits.new, which replaces the old commits file only
+ *  once the refs and the stage have been converted. Until then the old
+ *  commits file, or commits.new once it is gone, marks a repository whose
+ *  conversion isn't finished.
+ *
+ *  @author Nathan Lee
+ */
+class LayoutUpgrade {
+
+    /** The file holding the commits of the first version. */
+    private static final String OLD_COMMITS = "commits";
+    /** Where the converted commits are written until they replace it. */
+    private static final String NEW_COMMITS = "commits.new";
+
+    /** The .gitlet directory of the repository. */
+    private File dir;
+
+    private ObjectStore objects;
+    private TreeStore trees;
+    private CommitStore commits;
+
+    /** The old commits, by their six-digit ids. */
+    private HashMap<?, ?> oldCommits;
+    /** The commits converted so far, by the six-digit ids of the old ones. */
+    private HashMap<String, Commit> converted;
+
+    private LayoutUpgrade(File dir, int level) {
+        this.dir = dir;
+        objects = new ObjectStore(Utils.join(dir, "objects"), level);
+        trees = new TreeStore(objects);
+        commits = new CommitStore(Utils.join(dir, NEW_COMMITS), level);
+        converted = new HashMap<>();
+    }
+
+    /** Returns true if the repository whose .gitlet directory is DIR was
+     *  made by the first version and its conversion isn't finished. */
+    static boolean isNeeded(File dir) {
+        return Utils.join(dir, OLD_COMMITS).isFile() || Utils.join(dir, NEW_COMMITS).isDirectory();
+    }
+
+    /** Converts the repository whose .gitlet directory is DIR, compressing
+     *  what it writes at LEVEL. The caller holds the repository's lock. */
+    static void run(File dir, int level) {
+        new LayoutUpgrade(dir, level).convert();
+    }
+
+    private void convert() {
+        if (Utils.join(dir, OLD_COMMITS).isFile()) {
+            convertFiles();
+            Utils.join(dir, OLD_COMMITS).delete();
+        }
+        try {
+            Files.move(Utils.join(dir, NEW_COMMITS).toPath(), Utils.join(dir, OLD_COMMITS).toPath(),
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.syncDirectory(dir);
+    }
+
+    /** Converts the commits, refs and stage. The new commits are left in
+     *  NEW_COMMITS. */
+    private void convertFiles() {
+        objects.create();
+        commits.create();
+        oldCommits = readMap(OLD_COMMITS);
+        for (Object id : oldCommits.keySet()) {
+            convertCommit((String) id);
+        }
+
+        if (!Utils.join(dir, RefJournal.FILE).isFile()) {
+            HashMap<String, Branch> branches = new HashMap<>();
+            for (Object value : readMap("branches").values()) {
+                SerializedReader.Instance branch = (SerializedReader.Instance) value;
+                String name = (String) branch.get("name");
+                branches.put(name, new Branch(name, newId((String) branch.get("commit"))));
+            }
+            ObjectId head = newId(readString("head.txt"));
+            String currentBranch = readString("currentbranch.txt");
+            new RefJournal(dir).save(branches, head, currentBranch);
+        }
+        for (String name : new String[] {"branches", "head.txt", "currentbranch.txt"}) {
+            Utils.join(dir, name).delete();
+        }
+
+        File stageFile = Utils.join(dir, "stage");
+        if (stageFile.isFile() && SerializedReader.isSerialized(Utils.readContents(stageFile))) {
+            SerializedReader.Instance old =
+                (SerializedReader.Instance) SerializedReader.read(Utils.readContents(stageFile));
+            Stage stage = new Stage();
+            for (Map.Entry<?, ?> file : ((HashMap<?, ?>) old.get("addition")).entrySet()) {
+                stage.addFileToAdd((String) file.getKey(), writeBlob(file.getValue()));
+            }
+            for (Map.Entry<?, ?> file : ((HashMap<?, ?>) old.get("removal")).entrySet()) {
+                stage.addFileToRemoval((String) file.getKey(), writeBlob(file.getValue()));
+            }
+            Utils.writeContents(stageFile, stage.toBytes());
+        }
+
+        File remoteFile = Utils.join(dir, "remote");
+        if (remoteFile.isFile() && SerializedReader.isSerialized(Utils.readContents(remoteFile))) {
+            HashMap<String, File> remotes = new HashMap<>();
+            for (Map.Entry<?, ?> remote : readMap("remote").entrySet()) {
+                SerializedReader.Instance file = (SerializedReader.Instance) remote.getValue();
+                remotes.put((String) remote.getKey(), new File((String) file.get("path")));
+            }
+            Utils.writeContents(remoteFile, Repository.remotesToBytes(remotes));
+        }
+    }
+
+    /** Converts the old commit ID, after any of its ancestors not yet
+     *  converted, and returns the new commit. The history is walked
+     *  without recursion, since it may be long. */
+    private Commit convertCommit(String id) {
+        Deque<String> pending = new ArrayDeque<>();
+        pending.push(id);
+        while (!pending.isEmpty()) {
+            String next = pending.peek();
+            if (converted.containsKey(next)) {
+                pending.pop();
+                continue;
+            }
+            SerializedReader.Instance old = oldCommit(next);
+            String parent = shortId(old.get("parent"));
+            String secondParent = shortId(old.get("secondParent"));
+            boolean ready = true;
+            for (String p : new String[] {parent, secondParent}) {
+                if (p != null && !converted.containsKey(p)) {
+                    pending.push(p);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                pending.pop();
+                converted.put(next, convert(old, converted.get(parent),
+                                            converted.get(secondParent)));
+            }
+        }
+        return converted.get(id);
+    }
+
+    /** Writes the files of the old commit OLD, whose parents have been
+     *  converted to PARENT and SECONDPARENT (either may be null), and the
+     *  new commit itself, and returns the new commit. */
+    private Commit convert(SerializedReader.Instance old, Commit parent, Commit secondParent) {
+        Tree tree = new Tree();
+        HashMap<?, ?> files = (HashMap<?, ?>) old.get("files");
+        if (files != null) {
+            for (Map.Entry<?, ?> file : files.entrySet()) {
+                tree.putBlob((String) file.getKey(), writeBlob(file.getValue()));
+            }
+        }
+        int generation = 1 + Math.max(parent == null ? 0 : parent.getGeneration(),
+                                      secondParent == null ? 0 : secondParent.getGeneration());
+        String timestamp = (String) old.get("timestamp");
+        Commit commit = new Commit((String) old.get("message"),
+                                   parent == null ? null : parent.getHash(),
+                                   secondParent == null ? null : secondParent.getHash(),
+                                   generation, trees.put(tree), timestamp,
+                                   parseTime(timestamp));
+        commits.put(commit);
+        return commit;
+    }
+
+    /** Writes the contents of the old Blob BLOB to the object store and
+     *  returns their id. The first version read files as UTF-8 text and
+     *  wrote them back the same way. */
+    private ObjectId writeBlob(Object blob) {
+        String contents = (String) ((SerializedReader.Instance) blob).get("contents");
+        return objects.write(contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Returns the new id of the commit the first version named ID, which
+     *  may be the whole old id or its first six digits, or null if ID is
+     *  null or empty. */
+    private ObjectId newId(String id) {
+        String key = shortId(id);
+        if (key == null) {
+            return null;
+        }
+        return convertCommit(key).getHash();
+    }
+
+    private SerializedReader.Instance oldCommit(String id) {
+        Object old = oldCommits.get(id);
+        if (!(old instanceof SerializedReader.Instance)) {
+            throw Utils.error("Cannot convert this repository: commit %s is missing.", id);
+        }
+        return (SerializedReader.Instance) old;
+    }
+
+    /** Returns the first six digits of the old commit id ID, which is how
+     *  the first version looked commits up, or null if there is no id. */
+    private static String shortId(Object id) {
+        String text = (String) id;
+        if (text == null || text.isEmpty()) {
+            return null;
+        }
+        return text.substring(0, Math.min(6, text.length()));
+    }
+
+    /** Returns the time of the old commit TIMESTAMP, in milliseconds since
+     *  the epoch. */
+    private static long parseTime(String timestamp) {
+        try {
+            return new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z").parse(timestamp).getTime();
+        } catch (ParseException | NullPointerException excp) {
+            throw Utils.error("Cannot convert this repository: bad commit time %s.", timestamp);
+        }
+    }
+
+    /** Returns the HashMap serialized in the file NAME, or an empty one if
+     *  the file is missing or empty, as the first version left them before
+     *  its first commit. */
+    private HashMap<?, ?> readMap(String name) {
+        File file = Utils.join(dir, name);
+        if (!file.isFile() || file.length() == 0) {
+            return new HashMap<>();
+        }
+        Object map = SerializedReader.read(Utils.readContents(file));
+        if (!(map instanceof HashMap)) {
+            throw Utils.error("Cannot convert this repository: %s is corrupt.", name);
+        }
+        return (HashMap<?, ?>) map;
+    }
+
+    private String readString(String name) {
+        File file = Utils.join(dir, name);
+        return file.isFile() ? Utils.readContentsAsString(file) : "";
+    }
+}
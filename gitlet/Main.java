@@ -1,5 +1,8 @@
 package gitlet;
 
+import java.io.File;
+import java.util.Arrays;
+
 /** Driver class for Gitlet, a subset of the Git version-control system.
  *  @author Nathan Lee
  */
@@ -7,25 +10,43 @@ public class Main {
 
     /** Usage: java gitlet.Main ARGS, where ARGS contains
      *  <COMMAND> <OPERAND1> <OPERAND2> ... 
+     *  If a daemon is serving the current directory, the command is run
+     *  there instead (see Daemon).
      */
     public static void main(String[] args) {
+        try {
+            if (args.length >= 1 && args[0].equals("daemon")) {
+                daemon(args);
+            } else if (!Daemon.forward(args)) {
+                RepositoryLock lock = RepositoryLock.acquire(Repository.GITLET_DIR);
+                try {
+                    run(new Repository(), args);
+                } finally {
+                    RepositoryLock.release(lock);
+                }
+            }
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        }
+    }
+
+    /** Runs the command ARGS against REPO. */
+    static void run(Repository repo, String[] args) {
         if (args.length == 0) {
-            System.out.println("Please enter a command.");
-            System.exit(0);
+            throw Utils.error("Please enter a command.");
         }
         String firstArg = args[0];
 
-
-        Repository repo = new Repository();
         switch(firstArg) {
             case "init":
                 validateArgs(args, 1);
                 repo.init();
                 break;
             case "add":
-                validateArgs(args, 2);
-                String file = args[1];
-                repo.add(file);
+                if (args.length < 2) {
+                    validateArgs(args, 2);
+                }
+                repo.add(Arrays.copyOfRange(args, 1, args.length));
                 break;
             case "commit":
                 validateArgs(args, 2);
@@ -58,15 +79,9 @@ public class Main {
                 } else if (args.length == 3 && args[1].equals("--")) {
                     repo.checkoutFile(args[2]);
                 } else if (args.length == 4 && args[2].equals("--")) {
-                    if (args[1].length() == 6) {
-                        repo.checkoutCommitShort(args[1], args[3]);
-                    } else {
-                        repo.checkoutCommit(args[1], args[3]);
-                    }
-
+                    repo.checkoutCommit(args[1], args[3]);
                 } else {
-                    System.out.println("Incorrect operands.");
-                    System.exit(0);
+                    throw Utils.error("Incorrect operands.");
                 }
                 break;
             case "branch":
@@ -79,11 +94,7 @@ public class Main {
                 break;
             case "reset":
                 validateArgs(args, 2);
-                if (args[1].length() == 6) {
-                    repo.resetShort(args[1]);
-                } else {
-                    repo.reset(args[1]);
-                }
+                repo.reset(args[1]);
                 break;
             case "merge":
                 validateArgs(args, 2);
@@ -91,7 +102,11 @@ public class Main {
                 break;
             case "add-remote":
                 validateArgs(args, 3);
-                repo.addRemote(args[1], args[2].substring(0, args[2].length() - 8));
+                if (Bundle.isBundle(new File(args[2]))) {
+                    repo.addRemote(args[1], args[2]);
+                } else {
+                    repo.addRemote(args[1], args[2].substring(0, args[2].length() - 8));
+                }
                 break;
             case "rm-remote":
                 validateArgs(args, 2);
@@ -109,16 +124,41 @@ public class Main {
                 validateArgs(args, 3);
                 repo.pull(args[1], args[2]);
                 break;
+            case "gc":
+                validateArgs(args, 1);
+                repo.gc();
+                break;
+            case "bundle":
+                if (args.length >= 4 && args[1].equals("create")) {
+                    repo.bundleCreate(args[2], Arrays.copyOfRange(args, 3, args.length));
+                } else if (args.length == 3 && args[1].equals("unbundle")) {
+                    repo.bundleUnbundle(args[2]);
+                } else {
+                    throw Utils.error("Incorrect operands.");
+                }
+                break;
             default:
-                System.out.println("No command with that name exists.");
-                System.exit(0);
+                throw Utils.error("No command with that name exists.");
+        }
+    }
+
+    /** Starts a daemon serving the current directory, or stops the one
+     *  that is running. */
+    private static void daemon(String[] args) {
+        if (args.length == 1) {
+            Daemon.serve();
+        } else if (args.length == 2 && args[1].equals("stop")) {
+            if (!Daemon.forward(args)) {
+                System.out.println("No daemon is running.");
+            }
+        } else {
+            throw Utils.error("Incorrect operands.");
         }
     }
 
     public static void validateArgs(String[] args, int n) {
         if (args.length != n) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw Utils.error("Incorrect operands.");
         }
     }
 }
@@ -0,0 +1,70 @@
+package gitlet;
+
+import java.util.HashMap;
+
+/** Finds the split point (latest common ancestor) of two commits.
+ *
+ *  Both commits are walked at once in TOPO order, which expands commits by
+ *  decreasing generation, and every commit is marked with the side(s) it was
+ *  reached from. Since all children of a commit have higher generations, a
+ *  commit's marks are final when the walk gets to it, and the first commit
+ *  reached from both sides is a common ancestor that no other common ancestor
+ *  descends from. The walk goes through the nodes of the commits, so only
+ *  the split point itself is read in full.
+ *
+ *  @author Nathan Lee
+ */
+public class MergeBase {
+
+    /** Marks for commits reachable from the first and the second tip. */
+    private static final int FIRST = 1;
+    private static final int SECOND = 2;
+    private static final int BOTH = FIRST | SECOND;
+
+    /** Returns the latest common ancestor of the commits FIRSTID and
+     *  SECONDID in STORE, or null if they share no history. */
+    public static Commit find(CommitStore store, ObjectId firstId, ObjectId secondId) {
+        HashMap<ObjectId, Integer> marks = new HashMap<>();
+        mark(marks, firstId, FIRST);
+        mark(marks, secondId, SECOND);
+
+        CommitWalker walker = new CommitWalker(store, CommitWalker.Order.TOPO)
+            .include(firstId).include(secondId);
+        for (CommitGraph.Node commit : walker.nodes()) {
+            int mark = marks.get(commit.getHash());
+            if (mark == BOTH) {
+                return store.get(commit.getHash());
+            }
+            mark(marks, commit.getParent(), mark);
+            mark(marks, commit.getSecondParent(), mark);
+        }
+        return null;
+    }
+
+    /** Returns true if the commit ANCESTORID is in the history of the commit
+     *  ID (or is that commit). The walk stops as soon as it passes the
+     *  generation of ANCESTORID. */
+    public static boolean isAncestor(CommitStore store, ObjectId ancestorId, ObjectId id) {
+        CommitGraph.Node ancestor = store.node(ancestorId);
+        if (ancestor == null) {
+            return false;
+        }
+        CommitWalker walker = new CommitWalker(store, CommitWalker.Order.TOPO).include(id);
+        for (CommitGraph.Node commit : walker.nodes()) {
+            if (commit.getGeneration() < ancestor.getGeneration()) {
+                break;
+            }
+            if (commit.getHash().equals(ancestorId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Adds MARK to the marks of the commit ID. */
+    private static void mark(HashMap<ObjectId, Integer> marks, ObjectId id, int mark) {
+        if (id != null) {
+            marks.merge(id, mark, (a, b) -> a | b);
+        }
+    }
+}
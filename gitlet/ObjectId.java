@@ -0,0 +1,231 @@
+package gitlet;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/** The id of a commit, tree or blob: the 20 bytes of a SHA-1 hash. An id
+ *  is held as five ints rather than as its 40 hexadecimal digits, so it
+ *  takes a quarter of the memory of the String, and equals and hashCode
+ *  compare and mix a few words instead of every character. Ids are ordered
+ *  by their bytes as unsigned values, which is also the order of their
+ *  hexadecimal numerals and of the ids in a pack index.
+ *
+ *  The hexadecimal numeral is only made when an id is printed or names a
+ *  file.
+ *
+ *  @author Nathan Lee
+ */
+public final class ObjectId implements Comparable<ObjectId> {
+
+    /** The length of an id in bytes. */
+    public static final int SIZE = 20;
+
+    /** The length of an id as a hexadecimal numeral. */
+    public static final int HEX_LENGTH = Utils.UID_LENGTH;
+
+    /** Number of ints in an id. */
+    private static final int WORDS = SIZE / 4;
+
+    private final int w0;
+    private final int w1;
+    private final int w2;
+    private final int w3;
+    private final int w4;
+
+    private ObjectId(int w0, int w1, int w2, int w3, int w4) {
+        this.w0 = w0;
+        this.w1 = w1;
+        this.w2 = w2;
+        this.w3 = w3;
+        this.w4 = w4;
+    }
+
+    /** Returns the SHA-1 hash of the concatenation of VALS, which may be any
+     *  mixture of byte arrays, ByteBuffers and Strings, as for Utils.sha1. */
+    public static ObjectId hash(Object... vals) {
+        return fromBytes(Utils.sha1Bytes(vals), 0);
+    }
+
+    /** Returns the id whose bytes are the SIZE bytes of BYTES from
+     *  OFFSET. */
+    public static ObjectId fromBytes(byte[] bytes, int offset) {
+        return new ObjectId(intAt(bytes, offset), intAt(bytes, offset + 4),
+                            intAt(bytes, offset + 8), intAt(bytes, offset + 12),
+                            intAt(bytes, offset + 16));
+    }
+
+    /** Returns the id whose bytes are the SIZE bytes of BUFFER from OFFSET,
+     *  which must be in big-endian order. The position of BUFFER is left
+     *  alone. */
+    public static ObjectId fromBuffer(ByteBuffer buffer, int offset) {
+        return new ObjectId(buffer.getInt(offset), buffer.getInt(offset + 4),
+                            buffer.getInt(offset + 8), buffer.getInt(offset + 12),
+                            buffer.getInt(offset + 16));
+    }
+
+    /** Returns the id written as the 40-digit hexadecimal numeral HEX.
+     *  Throws IllegalArgumentException if HEX isn't one. */
+    public static ObjectId fromHex(String hex) {
+        if (hex.length() != HEX_LENGTH) {
+            throw new IllegalArgumentException("not an object id: " + hex);
+        }
+        return fromHex(hex, 0);
+    }
+
+    /** Returns the id written as the 40 hexadecimal digits of TEXT from
+     *  OFFSET. */
+    public static ObjectId fromHex(CharSequence text, int offset) {
+        return new ObjectId(wordAt(text, offset), wordAt(text, offset + 8),
+                            wordAt(text, offset + 16), wordAt(text, offset + 24),
+                            wordAt(text, offset + 32));
+    }
+
+    /** Returns true if TEXT is a complete id as a lower-case hexadecimal
+     *  numeral. */
+    public static boolean isHex(String text) {
+        return isHexPrefix(text) && text.length() == HEX_LENGTH;
+    }
+
+    /** Returns true if TEXT could start an id as a lower-case hexadecimal
+     *  numeral. The empty string starts every id. */
+    public static boolean isHexPrefix(String text) {
+        if (text.length() > HEX_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i += 1) {
+            char c = text.charAt(i);
+            if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Reads an id written by write from IN. */
+    public static ObjectId read(DataInput in) throws IOException {
+        return new ObjectId(in.readInt(), in.readInt(), in.readInt(), in.readInt(),
+                            in.readInt());
+    }
+
+    /** Writes the SIZE bytes of this id to OUT. */
+    public void write(DataOutput out) throws IOException {
+        for (int i = 0; i < WORDS; i += 1) {
+            out.writeInt(word(i));
+        }
+    }
+
+    /** Returns the SIZE bytes of this id. */
+    public byte[] toBytes() {
+        byte[] result = new byte[SIZE];
+        for (int i = 0; i < SIZE; i += 1) {
+            result[i] = (byte) (word(i / 4) >>> (24 - 8 * (i % 4)));
+        }
+        return result;
+    }
+
+    /** Returns the Ith int of this id, in big-endian order. */
+    int word(int i) {
+        switch (i) {
+            case 0:
+                return w0;
+            case 1:
+                return w1;
+            case 2:
+                return w2;
+            case 3:
+                return w3;
+            case 4:
+                return w4;
+            default:
+                throw new IndexOutOfBoundsException(i);
+        }
+    }
+
+    /** Returns the first byte of this id, from 0 to 255. */
+    public int firstByte() {
+        return w0 >>> 24;
+    }
+
+    /** Returns true if the hexadecimal numeral of this id starts with
+     *  PREFIX. */
+    public boolean startsWith(String prefix) {
+        if (prefix.length() > HEX_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i += 1) {
+            if (Character.digit(prefix.charAt(i), 16) != digit(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the first LENGTH digits of the hexadecimal numeral of this
+     *  id. */
+    public String abbreviate(int length) {
+        char[] result = new char[Math.min(length, HEX_LENGTH)];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = Character.forDigit(digit(i), 16);
+        }
+        return new String(result);
+    }
+
+    /** Returns this id as a 40-digit lower-case hexadecimal numeral. */
+    @Override
+    public String toString() {
+        return abbreviate(HEX_LENGTH);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId other = (ObjectId) obj;
+        return w0 == other.w0 && w1 == other.w1 && w2 == other.w2 && w3 == other.w3
+            && w4 == other.w4;
+    }
+
+    /** The bytes of a hash are already evenly spread, so its first int
+     *  serves as the hash code. */
+    @Override
+    public int hashCode() {
+        return w0;
+    }
+
+    @Override
+    public int compareTo(ObjectId other) {
+        for (int i = 0; i < WORDS; i += 1) {
+            int cmp = Integer.compareUnsigned(word(i), other.word(i));
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /** Returns the value of the Ith hexadecimal digit of this id. */
+    private int digit(int i) {
+        return (word(i / 8) >>> (28 - 4 * (i % 8))) & 0xf;
+    }
+
+    private static int intAt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) << 24 | (bytes[offset + 1] & 0xff) << 16
+            | (bytes[offset + 2] & 0xff) << 8 | (bytes[offset + 3] & 0xff);
+    }
+
+    /** Returns the int written as the 8 hexadecimal digits of TEXT from
+     *  OFFSET. */
+    private static int wordAt(CharSequence text, int offset) {
+        int result = 0;
+        for (int i = 0; i < 8; i += 1) {
+            result = result << 4 | Utils.hexValue(text.charAt(offset + i));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,691 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** A content-addressed store of file contents kept under .gitlet/objects.
+ *  Every object is written once, to a file named by the SHA-1 hash of its
+ *  bytes, so identical contents are shared by every commit that tracks them.
+ *
+ *  Files are streamed into and out of the store a buffer at a time, so they
+ *  are never held in memory as a whole and any bytes, text or not, are kept
+ *  exactly. Objects are stored zlib-compressed at the level given by the
+ *  repository's config; ids are always the hash of the uncompressed bytes.
+ *
+ *  New objects are written loose, one file each. repack() moves them into
+ *  a pack under objects/pack (see PackFile), storing versions of the same
+ *  file as deltas against each other. Every read looks in the loose
+ *  objects first and then in the packs, so callers never need to know
+ *  where an object lives.
+ *
+ *  @author Nathan Lee
+ */
+public class ObjectStore {
+
+    /** Size of the buffer used to stream files. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Each thread's buffer for reading files, so that hashing every file
+     *  of a large tree doesn't allocate a buffer per file. */
+    private static final ThreadLocal<ByteBuffer> BUFFERS =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocate(BUFFER_SIZE));
+
+    /** Objects larger than this, compressed, are left loose by repack()
+     *  and addIncoming(). */
+    private static final long BIG_OBJECT = 32 << 20;
+
+    /** Only objects up to this size are stored as or used as deltas, since
+     *  both sides of a delta are held in memory. */
+    private static final int MAX_DELTA_SIZE = 16 << 20;
+
+    /** The longest chain of deltas repack() builds before storing an object
+     *  in full again, which bounds the cost of reading any one object. */
+    private static final int MAX_DEPTH = 10;
+
+    /** Packs roll over to a new file past this size so that each can be
+     *  mapped into memory in one piece. */
+    private static final long MAX_PACK_SIZE = 1L << 30;
+
+    /** The directory holding the objects of this store. */
+    private File dir;
+
+    /** The zlib level new objects are compressed with. */
+    private int level;
+
+    /** The packs of this store, opened when first needed. */
+    private List<PackFile> packs;
+
+    /** The pack objects arriving in bulk are written to, if any. */
+    private PackWriter incoming;
+
+    public ObjectStore(File dir, int level) {
+        this.dir = dir;
+        this.level = level;
+    }
+
+    /** Creates the directory of this store if it doesn't already exist. */
+    public void create() {
+        dir.mkdirs();
+    }
+
+    /** Returns the SHA-1 hash of the contents of FILE, reading it a buffer
+     *  at a time. */
+    public static ObjectId hash(File file) {
+        MessageDigest md = Utils.sha1Digest();
+        ByteBuffer buffer = BUFFERS.get();
+        buffer.clear();
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                md.update(buffer);
+                buffer.clear();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return ObjectId.fromBytes(md.digest(), 0);
+    }
+
+    /** Writes CONTENTS into the store unless it is already there, and
+     *  returns its id. */
+    public ObjectId write(byte[] contents) {
+        ObjectId id = ObjectId.hash(contents);
+        put(id, contents);
+        return id;
+    }
+
+    /** Writes CONTENTS into the store as the object ID unless it is already
+     *  there. For objects such as commits whose ids are hashed from something
+     *  other than the bytes stored. */
+    public void put(ObjectId id, byte[] contents) {
+        if (!contains(id)) {
+            File temp = tempFile();
+            try {
+                Files.write(temp.toPath(), Utils.deflate(contents, level));
+            } catch (IOException excp) {
+                temp.delete();
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            install(temp, id);
+        }
+    }
+
+    /** Streams the contents of FILE into the store, hashing and compressing
+     *  them on the way, and returns their id. The file is read only once. */
+    public ObjectId writeFile(File file) {
+        MessageDigest md = Utils.sha1Digest();
+        ByteBuffer buffer = BUFFERS.get();
+        buffer.clear();
+        File temp = tempFile();
+        Deflater deflater = new Deflater(level);
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+             OutputStream out = new DeflaterOutputStream(Files.newOutputStream(temp.toPath()),
+                                                         deflater, BUFFER_SIZE)) {
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                md.update(buffer.array(), 0, count);
+                out.write(buffer.array(), 0, count);
+                buffer.clear();
+            }
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            deflater.end();
+        }
+        ObjectId id = ObjectId.fromBytes(md.digest(), 0);
+        install(temp, id);
+        return id;
+    }
+
+    /** Writes the contents of the object ID into FILE, creating or
+     *  overwriting it as needed. */
+    public void restore(ObjectId id, File file) {
+        try (InputStream in = open(id)) {
+            Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Copies the object ID from the store OTHER into this store, as it is
+     *  stored there, without inflating it. A loose object is hard-linked
+     *  into this store when both are on the same file system, since objects
+     *  never change once written, and otherwise copied by the file system
+     *  with transferTo. A full object in a pack is written straight out of
+     *  the mapped pack. Only deltas are inflated and compressed again. Every
+     *  copy is hashed, a hard link as soon as it is made and any other copy
+     *  before it is installed, and one that doesn't hash to ID is removed
+     *  and refused with a GitletException, so a damaged object in OTHER
+     *  never spreads to this store. A hard link still shares its file with
+     *  OTHER, so damage done to either one later shows in both. Safe to call
+     *  from several threads at once. */
+    public void copyFrom(ObjectStore other, ObjectId id) {
+        File source = other.objectFile(id);
+        if (source.exists() && link(source, id)) {
+            return;
+        }
+        File temp = tempFile();
+        Deflater deflater = new Deflater(level);
+        try {
+            ObjectId hash;
+            try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE)) {
+                ByteBuffer packed = source.exists() ? null : other.existingPack(id).compressed(id);
+                if (source.exists()) {
+                    try (FileChannel in = FileChannel.open(source.toPath(),
+                                                           StandardOpenOption.READ)) {
+                        long size = in.size();
+                        for (long done = 0; done < size; ) {
+                            done += in.transferTo(done, size - done, out);
+                        }
+                    }
+                    hash = null;
+                } else if (packed != null) {
+                    while (packed.hasRemaining()) {
+                        out.write(packed);
+                    }
+                    hash = null;
+                } else {
+                    /** The contents are hashed as they are inflated */
+                    MessageDigest md = Utils.sha1Digest();
+                    try (InputStream in = new DigestInputStream(other.open(id), md);
+                         OutputStream zip = new DeflaterOutputStream(
+                             Channels.newOutputStream(out), deflater, BUFFER_SIZE)) {
+                        in.transferTo(zip);
+                    }
+                    hash = ObjectId.fromBytes(md.digest(), 0);
+                }
+            }
+            if (hash == null) {
+                try (InputStream compressed = Files.newInputStream(temp.toPath())) {
+                    hash = hashCompressed(compressed);
+                }
+            }
+            if (!id.equals(hash)) {
+                throw mismatch(id);
+            }
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (GitletException excp) {
+            temp.delete();
+            throw excp;
+        } finally {
+            deflater.end();
+        }
+        install(temp, id);
+    }
+
+    /** Returns the zlib-compressed contents of the object ID as they are
+     *  stored: the bytes of a loose object's file, or the slice of its pack
+     *  holding a full object. A delta is inflated and compressed again. */
+    public ByteBuffer compressed(ObjectId id) {
+        File file = objectFile(id);
+        if (file.exists()) {
+            return ByteBuffer.wrap(Utils.readContents(file));
+        }
+        ByteBuffer packed = existingPack(id).compressed(id);
+        return packed != null ? packed : ByteBuffer.wrap(Utils.deflate(read(id), level));
+    }
+
+    /** Adds the object ID, whose zlib-compressed contents are the next
+     *  LENGTH bytes of IN, to a new pack of objects arriving in bulk, as
+     *  from a bundle. If this store already has the object, the bytes are
+     *  skipped. The contents must hash to ID, since they come from outside
+     *  the repository; an object that doesn't is refused with a
+     *  GitletException. An object too large to pack is written loose
+     *  instead, and a pack that the object would take past MAX_PACK_SIZE is
+     *  finished first, so every pack can still be mapped. Nothing added to
+     *  a pack is seen until finishIncoming(). */
+    public void addIncoming(ObjectId id, InputStream in, long length) {
+        if (skipIncoming(id, in, length)) {
+            return;
+        }
+        if (length > BIG_OBJECT) {
+            addLoose(id, in, length);
+            return;
+        }
+        byte[] compressed = readIncoming(in, length);
+        if (!id.equals(hashCompressed(new ByteArrayInputStream(compressed)))) {
+            throw mismatch(id);
+        }
+        addChecked(id, compressed);
+    }
+
+    /** Skips the next LENGTH bytes of IN and returns true if this store
+     *  already has the object ID or it has already arrived. */
+    boolean skipIncoming(ObjectId id, InputStream in, long length) {
+        if (!contains(id) && (incoming == null || !incoming.contains(id))) {
+            return false;
+        }
+        try {
+            in.skipNBytes(length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return true;
+    }
+
+    /** Returns the next LENGTH bytes of IN, the compressed contents of an
+     *  arriving object small enough to pack. */
+    static byte[] readIncoming(InputStream in, long length) {
+        if (length > BIG_OBJECT) {
+            throw Utils.error("Incoming object of %d bytes is too large.", length);
+        }
+        try {
+            byte[] compressed = in.readNBytes((int) length);
+            if (compressed.length < length) {
+                throw new EOFException();
+            }
+            return compressed;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Adds the object ID, whose zlib-compressed contents are COMPRESSED,
+     *  to the pack of arriving objects. The caller has checked the contents
+     *  against ID, as CommitStore does for commits, whose ids are hashed
+     *  from more than their bytes. */
+    void addChecked(ObjectId id, byte[] compressed) {
+        if (incoming != null && incoming.size() + compressed.length > MAX_PACK_SIZE) {
+            finishIncoming();
+        }
+        if (incoming == null) {
+            incoming = new PackWriter(packDir());
+        }
+        incoming.addCompressed(id, new ByteArrayInputStream(compressed), compressed.length);
+    }
+
+    /** Writes the object ID, whose zlib-compressed contents are the next
+     *  LENGTH bytes of IN, as a loose object once they are found to hash
+     *  to ID. */
+    private void addLoose(ObjectId id, InputStream in, long length) {
+        File temp = tempFile();
+        try {
+            try (OutputStream out = Files.newOutputStream(temp.toPath())) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                for (long left = length; left > 0; ) {
+                    int count = in.read(buffer, 0, (int) Math.min(buffer.length, left));
+                    if (count < 0) {
+                        throw new EOFException();
+                    }
+                    out.write(buffer, 0, count);
+                    left -= count;
+                }
+            }
+            try (InputStream compressed = Files.newInputStream(temp.toPath())) {
+                if (!id.equals(hashCompressed(compressed))) {
+                    throw mismatch(id);
+                }
+            }
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (GitletException excp) {
+            temp.delete();
+            throw excp;
+        }
+        install(temp, id);
+    }
+
+    /** Returns the SHA-1 hash of what the zlib-compressed bytes read from
+     *  IN inflate to, or null if they aren't a whole zlib stream. */
+    static ObjectId hashCompressed(InputStream in) {
+        MessageDigest md = Utils.sha1Digest();
+        Inflater inflater = new Inflater();
+        try (InputStream contents = new InflaterInputStream(in, inflater, BUFFER_SIZE)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int count = contents.read(buffer); count != -1; count = contents.read(buffer)) {
+                md.update(buffer, 0, count);
+            }
+        } catch (IOException excp) {
+            return null;
+        } finally {
+            inflater.end();
+        }
+        return ObjectId.fromBytes(md.digest(), 0);
+    }
+
+    static GitletException mismatch(ObjectId id) {
+        return Utils.error("Object %s does not match its contents.", id);
+    }
+
+    /** Throws away the pack of arriving objects, if any, as when what
+     *  arrives turns out to be corrupt. */
+    public void abandonIncoming() {
+        if (incoming != null) {
+            incoming.abandon();
+            incoming = null;
+        }
+    }
+
+    /** Finishes the pack of incoming objects, if any, making them seen. */
+    public void finishIncoming() {
+        if (incoming != null) {
+            incoming.finish();
+            incoming = null;
+            packs = null;
+        }
+    }
+
+    /** Returns the contents of the object with the given ID. */
+    public byte[] read(ObjectId id) {
+        File file = objectFile(id);
+        if (file.exists()) {
+            return Utils.inflate(Utils.readContents(file));
+        }
+        return existingPack(id).read(id);
+    }
+
+    /** Returns the contents of the object with the given ID as a String. */
+    public String readAsString(ObjectId id) {
+        return new String(read(id), StandardCharsets.UTF_8);
+    }
+
+    public boolean contains(ObjectId id) {
+        return objectFile(id).exists() || packFor(id) != null;
+    }
+
+    /** Moves every object of this store into new packs, replacing any packs
+     *  it already has. Each of CHAINS lists versions of one file, newest
+     *  first; each version is stored as a delta against the one before it
+     *  in its chain whenever that is smaller than storing it in full, so the
+     *  newest versions are the cheapest to read. Objects in no chain are
+     *  packed in full, except for very large ones, which stay loose. */
+    public void repack(Collection<List<ObjectId>> chains) {
+        List<PackFile> oldPacks = packs();
+        PackWriter writer = new PackWriter(packDir());
+        List<File> written = new ArrayList<>();
+        Set<ObjectId> packed = new HashSet<>();
+        /** Length of the delta chain of each object in the current pack. */
+        HashMap<ObjectId, Integer> depths = new HashMap<>();
+
+        for (List<ObjectId> chain : chains) {
+            ObjectId baseId = null;
+            byte[] base = null;
+            for (ObjectId id : chain) {
+                if (!contains(id) || isBig(id)) {
+                    continue;
+                }
+                if (writer.size() > MAX_PACK_SIZE) {
+                    written.add(writer.finish());
+                    writer = new PackWriter(packDir());
+                    depths.clear();
+                    base = null;
+                }
+                byte[] contents = readUpTo(id, MAX_DELTA_SIZE);
+                if (packed.add(id)) {
+                    int depth = 0;
+                    if (base != null && contents != null && depths.get(baseId) < MAX_DEPTH) {
+                        byte[] delta = Utils.deflate(Delta.create(base, contents), level);
+                        if (delta.length < storedSize(id)) {
+                            writer.addDelta(id, baseId, delta);
+                            depth = depths.get(baseId) + 1;
+                        }
+                    }
+                    if (depth == 0) {
+                        addFull(writer, id);
+                    }
+                    depths.put(id, depth);
+                }
+                if (depths.containsKey(id)) {
+                    baseId = id;
+                    base = contents;
+                } else {
+                    base = null;
+                }
+            }
+        }
+
+        for (ObjectId id : ids()) {
+            if (!packed.contains(id) && !isBig(id)) {
+                if (writer.size() > MAX_PACK_SIZE) {
+                    written.add(writer.finish());
+                    writer = new PackWriter(packDir());
+                }
+                addFull(writer, id);
+                packed.add(id);
+            }
+        }
+        written.add(writer.finish());
+
+        for (PackFile pack : oldPacks) {
+            if (!written.contains(pack.getFile())) {
+                pack.getFile().delete();
+                indexOf(pack.getFile()).delete();
+            }
+        }
+        for (ObjectId id : packed) {
+            File file = objectFile(id);
+            if (file.delete()) {
+                file.getParentFile().delete();
+            }
+        }
+        packs = null;
+    }
+
+    /** Objects are fanned out into subdirectories named by the first two
+     *  characters of their id so that no single directory grows too large. */
+    private File objectFile(ObjectId id) {
+        String hex = id.toString();
+        return Utils.join(dir, hex.substring(0, 2), hex.substring(2));
+    }
+
+    /** Returns a stream of the contents of the object ID. */
+    private InputStream open(ObjectId id) throws IOException {
+        File file = objectFile(id);
+        if (!file.exists()) {
+            return existingPack(id).open(id);
+        }
+        Inflater inflater = new Inflater();
+        return new InflaterInputStream(Files.newInputStream(file.toPath()),
+                                       inflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                inflater.end();
+            }
+        };
+    }
+
+    /** Returns the contents of the object ID, or null if it is longer than
+     *  LIMIT bytes. */
+    private byte[] readUpTo(ObjectId id, int limit) {
+        try (InputStream in = open(id)) {
+            byte[] contents = in.readNBytes(limit + 1);
+            return contents.length > limit ? null : contents;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Adds the object ID to WRITER in full, reusing the compressed bytes of
+     *  a loose object as they are. */
+    private void addFull(PackWriter writer, ObjectId id) {
+        File file = objectFile(id);
+        if (file.exists()) {
+            writer.addCompressed(id, file);
+            return;
+        }
+        try (InputStream in = open(id)) {
+            writer.addFull(id, in, level);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the number of bytes the object ID takes now: the length of
+     *  its file if it is loose, and otherwise what it takes in its pack. */
+    private long storedSize(ObjectId id) {
+        File file = objectFile(id);
+        return file.exists() ? file.length() : existingPack(id).storedSize(id);
+    }
+
+    private boolean isBig(ObjectId id) {
+        File file = objectFile(id);
+        return file.exists() && file.length() > BIG_OBJECT;
+    }
+
+    /** Returns the id of every object, loose or packed, in order. */
+    public Set<ObjectId> ids() {
+        return idsStartingWith("");
+    }
+
+    /** Returns the ids of every object whose id starts with PREFIX, in
+     *  order. Only the loose objects in the fan-out directory of PREFIX are
+     *  listed, and each pack finds its matches by binary search. */
+    public Set<ObjectId> idsStartingWith(String prefix) {
+        Set<ObjectId> ids = new TreeSet<>();
+        String dirPrefix = prefix.length() > 2 ? prefix.substring(0, 2) : prefix;
+        File[] fanout = dir.listFiles(f -> f.isDirectory() && f.getName().length() == 2
+                                      && f.getName().startsWith(dirPrefix));
+        if (fanout != null) {
+            for (File sub : fanout) {
+                for (String name : Utils.plainFilenamesIn(sub)) {
+                    String id = sub.getName() + name;
+                    if (id.startsWith(prefix) && ObjectId.isHex(id)) {
+                        ids.add(ObjectId.fromHex(id));
+                    }
+                }
+            }
+        }
+        for (PackFile pack : packs()) {
+            ids.addAll(pack.idsStartingWith(prefix));
+        }
+        return ids;
+    }
+
+    private File packDir() {
+        return Utils.join(dir, "pack");
+    }
+
+    private static File indexOf(File pack) {
+        String name = pack.getName();
+        return new File(pack.getParentFile(), name.substring(0, name.length() - 5) + ".idx");
+    }
+
+    /** Returns the packs of this store. A pack counts only once its index
+     *  exists, which PackWriter writes last. Synchronized, since WorkingTree
+     *  may look objects up from several threads. */
+    private synchronized List<PackFile> packs() {
+        if (packs == null) {
+            packs = new ArrayList<>();
+            List<String> names = Utils.plainFilenamesIn(packDir());
+            if (names != null) {
+                for (String name : names) {
+                    if (name.endsWith(".idx")) {
+                        String pack = name.substring(0, name.length() - 4) + ".pack";
+                        packs.add(new PackFile(Utils.join(packDir(), pack),
+                                               Utils.join(packDir(), name)));
+                    }
+                }
+            }
+        }
+        return packs;
+    }
+
+    /** Returns the pack holding the object ID, or null if none does. */
+    private PackFile packFor(ObjectId id) {
+        for (PackFile pack : packs()) {
+            if (pack.contains(id)) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    private PackFile existingPack(ObjectId id) {
+        PackFile pack = packFor(id);
+        if (pack == null) {
+            throw Utils.error("No object with id %s.", id);
+        }
+        return pack;
+    }
+
+    /** Returns a new, empty temporary file inside this store, so that it can
+     *  later be renamed into place. */
+    private File tempFile() {
+        try {
+            dir.mkdirs();
+            return File.createTempFile("tmp", null, dir);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Makes the file SOURCE, an object of another store, the object ID of
+     *  this store by a hard link, and hashes the linked file. A link that
+     *  doesn't hash to ID is removed again and refused with a
+     *  GitletException. Returns false if no link can be made, as between
+     *  file systems or where links aren't supported. If this store already
+     *  has the object, its own file is kept as it is, unhashed: objects
+     *  already in this store are trusted, as everywhere else. */
+    private boolean link(File source, ObjectId id) {
+        File file = objectFile(id);
+        file.getParentFile().mkdirs();
+        try {
+            Files.createLink(file.toPath(), source.toPath());
+        } catch (FileAlreadyExistsException excp) {
+            return true;
+        } catch (IOException | UnsupportedOperationException | SecurityException excp) {
+            return false;
+        }
+        ObjectId hash;
+        try (InputStream compressed = Files.newInputStream(file.toPath())) {
+            hash = hashCompressed(compressed);
+        } catch (IOException excp) {
+            hash = null;
+        }
+        if (!id.equals(hash)) {
+            file.delete();
+            throw mismatch(id);
+        }
+        Utils.syncDirectory(file.getParentFile());
+        return true;
+    }
+
+    /** Moves the finished object TEMP to its place as the object ID, or
+     *  throws it away if the store already has that object. It is flushed to
+     *  disk first, so no object is ever seen half-written, even after a
+     *  crash. */
+    private void install(File temp, ObjectId id) {
+        File file = objectFile(id);
+        if (file.exists()) {
+            temp.delete();
+            return;
+        }
+        file.getParentFile().mkdirs();
+        try {
+            Utils.moveDurably(temp, file);
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/** Copies the trees and blobs of commits from one object store to another,
+ *  for push and fetch.
+ *
+ *  The trees are walked on the calling thread, which hands every blob the
+ *  receiving store is missing to a pool of threads to copy (see
+ *  ObjectStore.copyFrom) while it carries on walking. The pool's queue is
+ *  bounded, so once it is full the walking thread copies a blob itself
+ *  rather than queueing more. When the walk is done, finish() waits for
+ *  the blobs and then copies the missing trees, each after everything
+ *  under it, so a tree in the receiving store is always complete. With one
+ *  thread everything is done in order on the calling thread.
+ *
+ *  When the sending side has bitmaps, addMissing() takes the objects in the
+ *  history of what is sent AND NOT in the history of what the receiving
+ *  side has, and adds only those, without walking any tree. addTree() then
+ *  only walks the trees of commits made since the bitmaps were written.
+ *
+ *  A transfer is used once:
+ *
+ *        try (ObjectTransfer transfer = new ObjectTransfer(from, to, has, n)) {
+ *            transfer.addMissing(want);
+ *            transfer.addTree(tree);
+ *            ...
+ *            transfer.finish();
+ *        }
+ *
+ *  @author Nathan Lee
+ */
+public class ObjectTransfer implements AutoCloseable {
+
+    /** Number of blobs that may wait in the queue per thread. */
+    private static final int QUEUE_PER_THREAD = 64;
+
+    private TreeStore from;
+    private ObjectStore to;
+
+    /** Objects the receiving store is known to have, or null. */
+    private CommitBitmaps.Reachable has;
+
+    /** The pool copying blobs, or null to copy them in order. */
+    private ThreadPoolExecutor pool;
+
+    /** The copies of blobs started so far. */
+    private List<Future<?>> copies;
+
+    /** Trees to copy once the blobs are done, each after those under it. */
+    private List<ObjectId> trees;
+
+    /** Every object reached so far, so each is looked at once. */
+    private HashSet<ObjectId> seen;
+
+    /** Copies from the trees FROM into the store TO on THREADS threads,
+     *  skipping the objects in HAS, which may be null. */
+    public ObjectTransfer(TreeStore from, ObjectStore to, CommitBitmaps.Reachable has,
+                          int threads) {
+        this.from = from;
+        this.to = to;
+        this.has = has;
+        copies = new ArrayList<>();
+        trees = new ArrayList<>();
+        seen = new HashSet<>();
+        if (threads > 1) {
+            pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+                                          new ArrayBlockingQueue<>(QUEUE_PER_THREAD * threads),
+                                          new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+    }
+
+    /** Adds every object in WANT and not in the objects the receiving
+     *  store is known to have to the transfer, if the receiving store is
+     *  missing it. The trees are added each after the trees under it. */
+    public void addMissing(CommitBitmaps.Reachable want) {
+        CommitBitmaps.Reachable missing = want.andNot(has);
+        for (ObjectId id : missing.blobs()) {
+            if (seen.add(id) && !to.contains(id)) {
+                copyBlob(id);
+            }
+        }
+        HashSet<ObjectId> sending = new HashSet<>(missing.trees());
+        for (ObjectId id : sending) {
+            addMissingTree(id, sending);
+        }
+    }
+
+    /** Adds the tree ID, and every tree under it that is in SENDING, to
+     *  the transfer, if the receiving store is missing them. Every blob
+     *  and other tree under it is already there or being copied. */
+    private void addMissingTree(ObjectId id, HashSet<ObjectId> sending) {
+        if (!seen.add(id) || to.contains(id)) {
+            return;
+        }
+        for (Tree.Entry entry : from.get(id).entries().values()) {
+            if (entry.isTree() && sending.contains(entry.getId())) {
+                addMissingTree(entry.getId(), sending);
+            }
+        }
+        trees.add(id);
+    }
+
+    /** Adds the tree ID, and every tree and blob under it that the
+     *  receiving store is missing, to the transfer. A tree the receiving
+     *  store already has is complete and is skipped. */
+    public void addTree(ObjectId id) {
+        if (!seen.add(id) || isThere(id)) {
+            return;
+        }
+        for (Tree.Entry entry : from.get(id).entries().values()) {
+            if (entry.isTree()) {
+                addTree(entry.getId());
+            } else if (seen.add(entry.getId()) && !isThere(entry.getId())) {
+                copyBlob(entry.getId());
+            }
+        }
+        trees.add(id);
+    }
+
+    /** Waits for every blob to be copied, then copies the trees. */
+    public void finish() {
+        for (Future<?> copy : copies) {
+            try {
+                copy.get();
+            } catch (ExecutionException excp) {
+                if (excp.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) excp.getCause();
+                }
+                throw new IllegalArgumentException(excp.getCause().getMessage());
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        copies.clear();
+        for (ObjectId id : trees) {
+            to.copyFrom(from.getStore(), id);
+        }
+        trees.clear();
+    }
+
+    /** Stops the pool, abandoning any copies not yet started. */
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Returns true if the receiving store has the object ID. */
+    private boolean isThere(ObjectId id) {
+        return has != null && has.contains(id) || to.contains(id);
+    }
+
+    private void copyBlob(ObjectId id) {
+        if (pool == null) {
+            to.copyFrom(from.getStore(), id);
+        } else {
+            copies.add(pool.submit(() -> to.copyFrom(from.getStore(), id)));
+        }
+    }
+}
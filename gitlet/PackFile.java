@@ -0,0 +1,285 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** A pack of objects under .gitlet/objects/pack, read through a memory map.
+ *
+ *  A pack file starts with the magic "PACK" and a version number, then holds
+ *  its objects back to back, and ends with the SHA-1 hash of everything
+ *  before it. Each object is
+ *      FULL,  zlib-compressed contents, or
+ *      DELTA, the 20-byte id of its base, zlib-compressed delta,
+ *  where the base of a delta is always in the same pack.
+ *
+ *  Each pack has an index file of the same name ending in ".idx" that gives
+ *  the offset of every object in it:
+ *      the magic "PIDX" and a version number;
+ *      the ids of the objects, as an IdTable (a 256-entry fan-out table
+ *          followed by the sorted 20-byte ids);
+ *      the 8-byte offsets of the objects, in the same order;
+ *      the hash at the end of the pack.
+ *  The index is memory-mapped too and searched where it lies: the fan-out
+ *  table narrows a lookup to the ids sharing its first byte, and a binary
+ *  search finds it among those. Opening a pack reads nothing else, so
+ *  lookups cost the same however many objects the pack holds.
+ *
+ *  @author Nathan Lee
+ */
+public class PackFile {
+
+    static final int PACK_MAGIC = 0x5041434b;
+    static final int INDEX_MAGIC = 0x50494458;
+    static final int VERSION = 1;
+    static final int INDEX_VERSION = 2;
+    /** Size of the pack header: magic and version. */
+    static final int HEADER_SIZE = 8;
+    /** Size of an object id in its raw form. */
+    static final int ID_SIZE = ObjectId.SIZE;
+
+    /** Object types. */
+    static final byte FULL = 0;
+    static final byte DELTA = 1;
+
+    /** Size of the buffer used to stream objects out of the pack. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The pack file. */
+    private File file;
+
+    /** The contents of the pack file. */
+    private MappedByteBuffer data;
+
+    /** The contents of the index file. */
+    private MappedByteBuffer index;
+
+    /** The ids of the objects in the pack, in the index. */
+    private IdTable ids;
+
+    /** Where the ids and the offsets start in the index. */
+    private static final int IDS_START = 8;
+    private int offsetsStart;
+
+    /** The offsets of the objects in the pack, in increasing order, which
+     *  give where each one ends. Only made when first needed. */
+    private int[] sortedOffsets;
+
+    /** Opens the pack PACK, whose index is INDEX. */
+    public PackFile(File pack, File index) {
+        file = pack;
+        data = map(pack);
+        this.index = map(index);
+        if (data.getInt(0) != PACK_MAGIC || data.getInt(4) != VERSION) {
+            throw Utils.error("Bad pack %s.", pack.getName());
+        }
+        if (this.index.getInt(0) != INDEX_MAGIC || this.index.getInt(4) != INDEX_VERSION) {
+            throw Utils.error("Bad pack index %s.", index.getName());
+        }
+        ids = new IdTable(this.index, IDS_START);
+        offsetsStart = ids.end();
+        if (this.index.limit() != offsetsStart + 8 * ids.count() + ID_SIZE || !sameTrailer()) {
+            throw Utils.error("Pack index %s does not match its pack.", index.getName());
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public boolean contains(ObjectId id) {
+        return ids.find(id) >= 0;
+    }
+
+    /** Returns the ids of every object in this pack whose id starts with
+     *  the hexadecimal PREFIX, in order. The first of them is found by
+     *  binary search and the rest follow it in the index. */
+    public List<ObjectId> idsStartingWith(String prefix) {
+        List<ObjectId> result = new ArrayList<>();
+        if (!ObjectId.isHexPrefix(prefix)) {
+            return result;
+        }
+        ObjectId lowest =
+            ObjectId.fromHex(prefix + "0".repeat(ObjectId.HEX_LENGTH - prefix.length()));
+        for (int pos = ids.lowerBound(lowest); pos < ids.count(); pos += 1) {
+            ObjectId id = ids.get(pos);
+            if (!id.startsWith(prefix)) {
+                break;
+            }
+            result.add(id);
+        }
+        return result;
+    }
+
+    /** Returns the contents of the object ID, applying its chain of deltas
+     *  to the full object at the end of it. */
+    public byte[] read(ObjectId id) {
+        Deque<byte[]> deltas = new ArrayDeque<>();
+        int offset = offsetOf(id);
+        while (data.get(offset) == DELTA) {
+            ObjectId base = ObjectId.fromBuffer(data, offset + 1);
+            deltas.push(inflate(offset + 1 + ID_SIZE));
+            offset = offsetOf(base);
+        }
+        byte[] result = inflate(offset + 1);
+        while (!deltas.isEmpty()) {
+            result = Delta.apply(result, deltas.pop());
+        }
+        return result;
+    }
+
+    /** Returns a stream of the contents of the object ID. Full objects are
+     *  inflated straight out of the pack as the stream is read. */
+    public InputStream open(ObjectId id) {
+        int offset = offsetOf(id);
+        if (data.get(offset) == DELTA) {
+            return new ByteArrayInputStream(read(id));
+        }
+        Inflater inflater = new Inflater();
+        return new InflaterInputStream(new BufferStream(tail(offset + 1)),
+                                       inflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                inflater.end();
+            }
+        };
+    }
+
+    /** Returns the zlib-compressed contents of the object ID as they lie
+     *  in the pack, or null if it is stored as a delta. The bytes are a
+     *  slice of the mapped pack, so they can be written out without being
+     *  inflated or copied first. */
+    public ByteBuffer compressed(ObjectId id) {
+        int offset = offsetOf(id);
+        if (data.get(offset) == DELTA) {
+            return null;
+        }
+        return data.slice(offset + 1, endOf(offset) - offset - 1);
+    }
+
+    /** Returns the number of bytes the object ID takes in the pack after
+     *  its kind: its compressed contents, or its base id and compressed
+     *  delta. */
+    public long storedSize(ObjectId id) {
+        int offset = offsetOf(id);
+        return endOf(offset) - offset - 1;
+    }
+
+    /** Returns the offset just past the object at OFFSET: that of the next
+     *  object in the pack, or of the trailing hash. */
+    private int endOf(int offset) {
+        int[] offsets = sortedOffsets();
+        int pos = Arrays.binarySearch(offsets, offset);
+        return pos + 1 < offsets.length ? offsets[pos + 1] : data.limit() - ID_SIZE;
+    }
+
+    /** Returns the offsets of the objects in increasing order, reading them
+     *  from the index the first time. Synchronized, since transfers read
+     *  packs from several threads. */
+    private synchronized int[] sortedOffsets() {
+        if (sortedOffsets == null) {
+            int[] offsets = new int[ids.count()];
+            for (int i = 0; i < offsets.length; i += 1) {
+                offsets[i] = Math.toIntExact(index.getLong(offsetsStart + 8 * i));
+            }
+            Arrays.sort(offsets);
+            sortedOffsets = offsets;
+        }
+        return sortedOffsets;
+    }
+
+    private int offsetOf(ObjectId id) {
+        int pos = ids.find(id);
+        if (pos < 0) {
+            throw Utils.error("No object with id %s.", id);
+        }
+        return Math.toIntExact(index.getLong(offsetsStart + 8 * pos));
+    }
+
+    /** Returns whether the index ends with the hash at the end of the pack. */
+    private boolean sameTrailer() {
+        int indexEnd = index.limit() - ID_SIZE;
+        int packEnd = data.limit() - ID_SIZE;
+        for (int i = 0; i < ID_SIZE; i += 1) {
+            if (index.get(indexEnd + i) != data.get(packEnd + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static MappedByteBuffer map(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the bytes of the pack from OFFSET up to its trailing hash. */
+    private ByteBuffer tail(int offset) {
+        return data.slice(offset, data.limit() - ID_SIZE - offset);
+    }
+
+    /** Returns the result of inflating the zlib stream at OFFSET. */
+    private byte[] inflate(int offset) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(tail(offset));
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && !inflater.finished()
+                    && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw Utils.error("Corrupt pack %s.", file.getName());
+                }
+                result.write(buffer, 0, count);
+            }
+            return result.toByteArray();
+        } catch (DataFormatException excp) {
+            throw Utils.error("Corrupt pack %s.", file.getName());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /** An InputStream over the remaining bytes of a ByteBuffer. */
+    private static class BufferStream extends InputStream {
+        private ByteBuffer buffer;
+
+        BufferStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+    }
+}
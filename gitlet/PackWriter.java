@@ -0,0 +1,215 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/** Writes a new pack and its index into a pack directory, in the format
+ *  described in PackFile. Objects are appended one at a time; nothing is
+ *  visible to readers until finish() renames the index into place.
+ *
+ *  @author Nathan Lee
+ */
+public class PackWriter {
+
+    /** Size of the buffer used to stream objects into the pack. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The directory the pack is written to. */
+    private File dir;
+
+    /** The pack, under a temporary name until it is finished. */
+    private File temp;
+
+    /** Hash of every byte written so far. */
+    private MessageDigest md;
+
+    private Counter counter;
+    private DataOutputStream out;
+
+    /** Offset of each object written so far, by id. */
+    private HashMap<ObjectId, Long> offsets;
+
+    public PackWriter(File dir) {
+        this.dir = dir;
+        offsets = new HashMap<>();
+        md = Utils.newSha1Digest();
+        try {
+            dir.mkdirs();
+            temp = File.createTempFile("tmp", null, dir);
+            counter = new Counter(new DigestOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp.toPath()), BUFFER_SIZE), md));
+            out = new DataOutputStream(counter);
+            out.writeInt(PackFile.PACK_MAGIC);
+            out.writeInt(PackFile.VERSION);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the number of bytes written to the pack so far. */
+    public long size() {
+        return counter.count;
+    }
+
+    public boolean contains(ObjectId id) {
+        return offsets.containsKey(id);
+    }
+
+    /** Adds the object ID as a full object whose zlib-compressed contents
+     *  are the bytes of the file COMPRESSED, which are copied as they are. */
+    public void addCompressed(ObjectId id, File compressed) {
+        start(id, PackFile.FULL);
+        try {
+            Files.copy(compressed.toPath(), out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Adds the object ID as a full object whose zlib-compressed contents
+     *  are the next LENGTH bytes of IN, which are copied as they are. */
+    public void addCompressed(ObjectId id, InputStream in, long length) {
+        start(id, PackFile.FULL);
+        try {
+            byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, length)];
+            for (long left = length; left > 0; ) {
+                int count = in.read(buffer, 0, (int) Math.min(buffer.length, left));
+                if (count < 0) {
+                    throw new EOFException();
+                }
+                out.write(buffer, 0, count);
+                left -= count;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Adds the object ID as a full object, compressing the contents read
+     *  from IN at LEVEL. */
+    public void addFull(ObjectId id, InputStream in, int level) {
+        start(id, PackFile.FULL);
+        Deflater deflater = new Deflater(level);
+        try {
+            DeflaterOutputStream zip = new DeflaterOutputStream(out, deflater, BUFFER_SIZE);
+            in.transferTo(zip);
+            zip.finish();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /** Adds the object ID as the zlib-compressed delta DELTA against the
+     *  object BASE, which must already be in this pack. */
+    public void addDelta(ObjectId id, ObjectId base, byte[] delta) {
+        if (!contains(base)) {
+            throw Utils.error("Delta base %s is not in the pack.", base);
+        }
+        start(id, PackFile.DELTA);
+        try {
+            base.write(out);
+            out.write(delta);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Finishes the pack and writes its index, and returns the pack file,
+     *  or null if no objects were added, in which case nothing is kept. */
+    public File finish() {
+        try {
+            out.flush();
+            byte[] hash = md.digest();
+            out.write(hash);
+            out.close();
+            if (offsets.isEmpty()) {
+                temp.delete();
+                return null;
+            }
+
+            String name = "pack-" + Utils.toHex(hash);
+            File pack = Utils.join(dir, name + ".pack");
+            Utils.moveDurably(temp, pack);
+
+            List<ObjectId> ids = new ArrayList<>(offsets.keySet());
+            Collections.sort(ids);
+            File indexTemp = File.createTempFile("tmp", null, dir);
+            try (DataOutputStream idx = new DataOutputStream(new BufferedOutputStream(
+                     Files.newOutputStream(indexTemp.toPath()), BUFFER_SIZE))) {
+                idx.writeInt(PackFile.INDEX_MAGIC);
+                idx.writeInt(PackFile.INDEX_VERSION);
+                IdTable.write(idx, ids);
+                for (ObjectId id : ids) {
+                    idx.writeLong(offsets.get(id));
+                }
+                idx.write(hash);
+            }
+            Utils.moveDurably(indexTemp, Utils.join(dir, name + ".idx"));
+            return pack;
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Closes the pack and deletes it, keeping nothing. */
+    public void abandon() {
+        try {
+            out.close();
+        } catch (IOException excp) {
+            /** The pack is thrown away regardless. */
+        }
+        temp.delete();
+    }
+
+    /** Records the offset of the object ID and writes its TYPE. */
+    private void start(ObjectId id, byte type) {
+        if (contains(id)) {
+            throw Utils.error("Object %s is already in the pack.", id);
+        }
+        try {
+            offsets.put(id, counter.count);
+            out.writeByte(type);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Counts the bytes written through it. */
+    private static class Counter extends FilterOutputStream {
+        private long count;
+
+        Counter(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count += 1;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
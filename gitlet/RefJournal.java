@@ -0,0 +1,215 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** The branches, head commit and current branch of a repository, kept in
+ *  .gitlet/journal as a log of changes, one per line:
+ *      branch <commit id> <name>
+ *      delete <name>
+ *      head <commit id>
+ *      current <name>
+ *      end
+ *  A command appends the lines for only what it changed, followed by
+ *  "end", and the journal is read by replaying it from the start. A batch
+ *  cut short by a crash has no "end" and is ignored. Once the journal has
+ *  grown well past the size of the state it describes, it is compacted
+ *  into a single batch and renamed into place.
+ *
+ *  @author Nathan Lee
+ */
+public class RefJournal {
+
+    public static final String FILE = "journal";
+
+    /** How many lines the journal may have beyond twice the number needed
+     *  to describe the whole state before it is compacted. */
+    private static final int SLACK = 512;
+
+    private static final String BRANCH = "branch";
+    private static final String DELETE = "delete";
+    private static final String HEAD = "head";
+    private static final String CURRENT = "current";
+    private static final String END = "end";
+
+    /** The .gitlet directory of the repository. */
+    private File dir;
+
+    /** The state as of the last batch written, with branches mapped to the
+     *  ids of their commits. HEAD is null in a repository with no commits. */
+    private HashMap<String, ObjectId> branches;
+    private ObjectId head;
+    private String currentBranch;
+
+    /** The number of lines in the journal. */
+    private int lines;
+
+    /** True if the journal ends in a batch cut short, which must not have
+     *  more lines appended after it. */
+    private boolean torn;
+
+    /** Reads the refs of the repository whose .gitlet directory is DIR. */
+    public RefJournal(File dir) {
+        this.dir = dir;
+        branches = new HashMap<>();
+        currentBranch = "";
+        if (journal().isFile()) {
+            replay(Utils.readContentsAsString(journal()));
+        }
+    }
+
+    /** Returns a copy of the branches, by name. */
+    public HashMap<String, Branch> getBranches() {
+        HashMap<String, Branch> result = new HashMap<>();
+        for (Map.Entry<String, ObjectId> branch : branches.entrySet()) {
+            result.put(branch.getKey(), new Branch(branch.getKey(), branch.getValue()));
+        }
+        return result;
+    }
+
+    public ObjectId getHead() {
+        return head;
+    }
+
+    public String getCurrentBranch() {
+        return currentBranch;
+    }
+
+    /** Records NEWBRANCHES, NEWHEAD and NEWCURRENT as the state of the
+     *  repository, appending only what differs from the last state
+     *  written. */
+    public void save(Map<String, Branch> newBranches, ObjectId newHead, String newCurrent) {
+        StringBuilder batch = new StringBuilder();
+        int count = 0;
+        for (Branch branch : newBranches.values()) {
+            if (!branch.getCommit().equals(branches.get(branch.getName()))) {
+                batch.append(BRANCH).append(' ').append(branch.getCommit()).append(' ')
+                     .append(branch.getName()).append('\n');
+                count += 1;
+            }
+        }
+        for (String name : branches.keySet()) {
+            if (!newBranches.containsKey(name)) {
+                batch.append(DELETE).append(' ').append(name).append('\n');
+                count += 1;
+            }
+        }
+        if (newHead != null && !newHead.equals(head)) {
+            batch.append(HEAD).append(' ').append(newHead).append('\n');
+            count += 1;
+        }
+        if (!newCurrent.equals(currentBranch)) {
+            batch.append(CURRENT).append(' ').append(newCurrent).append('\n');
+            count += 1;
+        }
+
+        boolean exists = journal().isFile();
+        if (count == 0 && exists) {
+            return;
+        }
+        branches = new HashMap<>();
+        for (Branch branch : newBranches.values()) {
+            branches.put(branch.getName(), branch.getCommit());
+        }
+        head = newHead;
+        currentBranch = newCurrent;
+
+        if (!exists || torn || lines + count + 1 > 2 * (branches.size() + 3) + SLACK) {
+            compact();
+        } else {
+            batch.append(END).append('\n');
+            append(batch.toString());
+            lines += count + 1;
+        }
+    }
+
+    /** Rewrites the journal as a single batch describing the current state,
+     *  replacing the old one in one step. */
+    private void compact() {
+        StringBuilder text = new StringBuilder();
+        int count = 0;
+        for (Map.Entry<String, ObjectId> branch : branches.entrySet()) {
+            text.append(BRANCH).append(' ').append(branch.getValue()).append(' ')
+                .append(branch.getKey()).append('\n');
+            count += 1;
+        }
+        if (head != null) {
+            text.append(HEAD).append(' ').append(head).append('\n');
+        }
+        text.append(CURRENT).append(' ').append(currentBranch).append('\n');
+        text.append(END).append('\n');
+        Utils.writeContents(journal(), text.toString());
+        lines = count + 3;
+        torn = false;
+    }
+
+    /** Appends TEXT to the journal and flushes it to disk. */
+    private void append(String text) {
+        try (FileOutputStream out = new FileOutputStream(journal(), true)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Applies every complete batch in TEXT, in order. */
+    private void replay(String text) {
+        List<String> batch = new ArrayList<>();
+        int start = 0;
+        while (true) {
+            int end = text.indexOf('\n', start);
+            if (end < 0) {
+                break;
+            }
+            String line = text.substring(start, end);
+            start = end + 1;
+            lines += 1;
+            if (line.equals(END)) {
+                torn = false;
+                for (String change : batch) {
+                    apply(change);
+                }
+                batch.clear();
+            } else {
+                batch.add(line);
+                torn = true;
+            }
+        }
+        torn = torn || start < text.length();
+    }
+
+    private void apply(String line) {
+        int space = line.indexOf(' ');
+        String type = line.substring(0, space);
+        String rest = line.substring(space + 1);
+        switch (type) {
+            case BRANCH:
+                int nameStart = rest.indexOf(' ');
+                branches.put(rest.substring(nameStart + 1),
+                             ObjectId.fromHex(rest.substring(0, nameStart)));
+                break;
+            case DELETE:
+                branches.remove(rest);
+                break;
+            case HEAD:
+                head = ObjectId.fromHex(rest);
+                break;
+            case CURRENT:
+                currentBranch = rest;
+                break;
+            default:
+                throw Utils.error("Corrupt journal line: %s", line);
+        }
+    }
+
+    private File journal() {
+        return Utils.join(dir, FILE);
+    }
+}
@@ -1,13 +1,30 @@
 package gitlet;
 
 import java.io.File;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Collections;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 
 import static gitlet.Utils.*;
 
@@ -34,87 +51,106 @@ public class Repository {
      */
     public static final File GITLET_DIR = join(CWD, ".gitlet");
 
-    private HashMap<String, Commit> commits;
+    /** Settings read from .gitlet/config. */
+    private Config config;
+    /** The content-addressed store of file contents and trees. */
+    private ObjectStore objects;
+    /** The directory trees of commits, kept in the object store. */
+    private TreeStore trees;
+    /** Every commit, each loaded from .gitlet/commits only when needed. */
+    private CommitStore commits;
+    /** The branches, head and current branch as last written. */
+    private RefJournal refs;
     private HashMap<String, Branch> branches;
     private Stage stagingArea;
-    private String head;
+    /** Cached size, modification time and blob id of working files. */
+    private Index index;
+    /** Scans and hashes the working directory. */
+    private WorkingTree workingTree;
+    private ObjectId head;
     private String currentBranch;
     private boolean mergeConflict;
 
     /** Remote stuff */
     private HashMap<String, File> remoteRepos;
 
+    /** The stage and remotes as last read or written, so that serialize()
+     *  only writes them if they changed. */
+    private byte[] savedStage;
+    private byte[] savedRemotes;
+
+    /** The version of the binary format of the remotes file. */
+    private static final int REMOTES_VERSION = 1;
+
     public Repository() {
         /** If data already exists then retrieve it. If not, instantiate instance variables.*/
 
-        File commitsFile = Utils.join(GITLET_DIR, "commits");
-        try {
-            commits = Utils.readObject(commitsFile, HashMap.class);
-        } catch (IllegalArgumentException a) {
-            commits = new HashMap<>();
+        config = new Config(Utils.join(GITLET_DIR, "config"));
+        if (LayoutUpgrade.isNeeded(GITLET_DIR)) {
+            LayoutUpgrade.run(GITLET_DIR, config.compressionLevel());
         }
+        objects = new ObjectStore(Utils.join(GITLET_DIR, "objects"), config.compressionLevel());
+        trees = new TreeStore(objects);
+        workingTree = new WorkingTree(CWD, config.threads());
+        commits = new CommitStore(Utils.join(GITLET_DIR, "commits"), config.compressionLevel());
 
-        File branchesFile = Utils.join(GITLET_DIR, "branches");
-        try {
-            branches = Utils.readObject(branchesFile, HashMap.class);
-        } catch (IllegalArgumentException a) {
-            branches = new HashMap<>();
-        }
+        refs = new RefJournal(GITLET_DIR);
+        branches = refs.getBranches();
+        head = refs.getHead();
+        currentBranch = refs.getCurrentBranch();
 
         File stageFile = Utils.join(GITLET_DIR, "stage");
         try {
-            stagingArea = Utils.readObject(stageFile, Stage.class);
+            savedStage = Utils.readContents(stageFile);
+            stagingArea = Stage.parse(savedStage);
         } catch (IllegalArgumentException a) {
             stagingArea = new Stage();
         }
 
-        File headFile = Utils.join(GITLET_DIR, "head.txt");
-        try {
-            head = Utils.readContentsAsString(headFile);
-        } catch (IllegalArgumentException a) {
-            head = "";
-        }
-
-        File currentBranchFile = Utils.join(GITLET_DIR, "currentbranch.txt");
+        File indexFile = Utils.join(GITLET_DIR, "index");
         try {
-            currentBranch = Utils.readContentsAsString(currentBranchFile);
+            index = Index.parse(Utils.readContents(indexFile));
         } catch (IllegalArgumentException a) {
-            currentBranch = "";
+            index = new Index();
         }
 
         File remoteFile = Utils.join(GITLET_DIR, "remote");
         try {
-            remoteRepos = Utils.readObject(remoteFile, HashMap.class);
+            savedRemotes = Utils.readContents(remoteFile);
+            remoteRepos = parseRemotes(savedRemotes);
         } catch (IllegalArgumentException a) {
             remoteRepos = new HashMap<>();
         }
     }
 
     public void init() {
-        if (GITLET_DIR.exists()) {
+        /** Make .gitlet directory. Only one of several inits run at once
+         *  can make it, and it is locked before anything is written in it. */
+        if (!GITLET_DIR.mkdir()) {
             System.out.println("A Gitlet version-control "
                     + "system already exists in the current directory.");
             return;
         }
-
-        /** Make .gitlet directory */
-        GITLET_DIR.mkdir();
-
-        /** Make commits file */
-        File commitsFile = Utils.join(GITLET_DIR, "commits");
+        RepositoryLock lock = RepositoryLock.acquire(GITLET_DIR);
         try {
-            commitsFile.createNewFile();
-        } catch (IOException | ClassCastException excp) {
-            throw new IllegalArgumentException(excp.getMessage());
+            create();
+        } finally {
+            RepositoryLock.release(lock);
         }
+    }
 
-        /** Make branches file */
-        File branchesFile = Utils.join(GITLET_DIR, "branches");
-        try {
-            branchesFile.createNewFile();
-        } catch (IOException | ClassCastException excp) {
-            throw new IllegalArgumentException(excp.getMessage());
-        }
+    /** Fills in the new, locked .gitlet directory of init(). */
+    private void create() {
+
+        /** Make config file with the default settings */
+        config.set(Config.COMPRESSION, Integer.toString(Config.DEFAULT_COMPRESSION));
+        config.save(Utils.join(GITLET_DIR, "config"));
+
+        /** Make objects directory */
+        objects.create();
+
+        /** Make commits directory */
+        commits.create();
 
         /** Make staging area*/
         File stageFile = Utils.join(GITLET_DIR, "stage");
@@ -124,22 +160,6 @@ public class Repository {
             throw new IllegalArgumentException(excp.getMessage());
         }
 
-        /** Make head file*/
-        File headFile = Utils.join(GITLET_DIR, "head.txt");
-        try {
-            headFile.createNewFile();
-        } catch (IOException | ClassCastException excp) {
-            throw new IllegalArgumentException(excp.getMessage());
-        }
-
-        /** Make currentBranch file */
-        File currentBranchFile = Utils.join(GITLET_DIR, "currentbranch.txt");
-        try {
-            currentBranchFile.createNewFile();
-        } catch (IOException | ClassCastException excp) {
-            throw new IllegalArgumentException(excp.getMessage());
-        }
-
         /** Make remote file */
         File remoteFile = Utils.join(GITLET_DIR, "remote");
         try {
@@ -149,60 +169,107 @@ public class Repository {
         }
 
         /** Create initial commit and master branch */
-        Commit newCommit = new Commit("initial commit", null, new HashMap<>());
+        Commit newCommit = new Commit("initial commit", null, 1, trees.put(new Tree()));
         Branch newBranch = new Branch("master", newCommit);
-        commits.put(newCommit.getShortHash(), newCommit);
+        commits.put(newCommit);
         branches.put(newBranch.getName(), newBranch);
 
-        head = newCommit.getShortHash();
+        head = newCommit.getHash();
         currentBranch = newBranch.getName();
 
         /** Saves everything in .gitlet directory */
         serialize();
     }
 
-    public void add(String fileName) {
+    /** Stages the files named by FILENAMES. Each may be a file, a directory,
+     *  standing for every file under it, or a glob pattern such as "*.txt"
+     *  or "src/**.java". All the files are hashed and stored in one pass and
+     *  the repository is saved once at the end. */
+    public void add(String... fileNames) {
         if (!GITLET_DIR.exists()) {
             System.out.println("Not in an initialized Gitlet directory.");
             return;
         }
-        /** Check to see if file exists
-         * If not, print "File does not exist."
+        /** Check to see if every file exists
+         * If not, print "File does not exist." and stage nothing
          * */
-        File newFile = Utils.join(CWD, fileName);
-        if (!newFile.exists()) {
+        Set<String> paths = matchWorkingFiles(fileNames);
+        if (paths == null) {
             System.out.println("File does not exist.");
             return;
         }
 
-        /** Adds file to staging area for addition * */
+        /** Adds files to staging area for addition * */
 
         Commit currentCommit = commits.get(head);
-        Blob fileContents = new Blob(newFile);
-        HashMap<String, Blob> addFiles = stagingArea.getAddFiles();
-        HashMap<String, Blob> removeFiles = stagingArea.getRemoveFiles();
-
-        if (removeFiles.containsKey(fileName)) {
-            stagingArea.removeFromRemoval(fileName);
-        }
-
-        if (currentCommit.hasFile(fileName)
-                && currentCommit.getFile(fileName).sameContents(fileContents)) {
-            /** File is identical to the one in the current commit */
-            if (addFiles.containsKey(fileName)) {
-                stagingArea.removeFromAdd(fileName);
+        Map<String, ObjectId> blobIds = workingTree.store(paths, index, objects);
+        HashMap<String, ObjectId> addFiles = stagingArea.getAddFiles();
+        HashMap<String, ObjectId> removeFiles = stagingArea.getRemoveFiles();
+
+        for (Map.Entry<String, ObjectId> file : blobIds.entrySet()) {
+            String fileName = file.getKey();
+            ObjectId blobId = file.getValue();
+            if (removeFiles.containsKey(fileName)) {
+                stagingArea.removeFromRemoval(fileName);
             }
-        } else {
-            if (addFiles.containsKey(fileName)) {
-                stagingArea.removeFromAdd(fileName);
+
+            if (blobId.equals(trees.blobId(currentCommit.getTree(), fileName))) {
+                /** File is identical to the one in the current commit */
+                if (addFiles.containsKey(fileName)) {
+                    stagingArea.removeFromAdd(fileName);
+                }
+            } else {
+                if (addFiles.containsKey(fileName)) {
+                    stagingArea.removeFromAdd(fileName);
+                }
+                stagingArea.addFileToAdd(fileName, blobId);
             }
-            stagingArea.addFileToAdd(newFile);
         }
 
         /** Save */
         serialize();
     }
 
+    /** Returns the paths of the working files named by PATTERNS, or null if
+     *  any of them names no file. The working directory is only scanned if
+     *  a directory or a glob pattern is given. */
+    private Set<String> matchWorkingFiles(String[] patterns) {
+        Set<String> result = new TreeSet<>();
+        List<String> allFiles = null;
+        Path root = CWD.toPath().toAbsolutePath().normalize();
+        for (String pattern : patterns) {
+            String path = workingPath(pattern);
+            if (path != null && Utils.join(CWD, path).isFile()) {
+                result.add(path);
+                continue;
+            }
+            boolean glob = pattern.matches(".*[*?\\[{].*");
+            boolean dir = !glob && root.resolve(pattern).toFile().isDirectory();
+            Path normal = root.relativize(root.resolve(pattern).normalize());
+            if (!(glob || dir) || !insideWorkingTree(normal)) {
+                return null;
+            }
+            String relative = normal.toString().replace(File.separatorChar, '/');
+            if (allFiles == null) {
+                allFiles = workingTree.files();
+            }
+            PathMatcher matcher = glob
+                ? FileSystems.getDefault().getPathMatcher("glob:" + relative) : null;
+            String prefix = relative.isEmpty() ? "" : relative + "/";
+            boolean matched = false;
+            for (String file : allFiles) {
+                if (glob ? matcher.matches(Paths.get(file)) : file.startsWith(prefix)) {
+                    result.add(file);
+                    matched = true;
+                }
+            }
+            if (!matched) {
+                return null;
+            }
+        }
+        return result;
+    }
+
     public void commit(String msg) {
         if (!GITLET_DIR.exists()) {
             System.out.println("Not in an initialized Gitlet directory.");
@@ -227,18 +294,11 @@ public class Repository {
         }
 
         Commit prevCommit = commits.get(head);
-        HashMap<String, Blob> filesToTrack = new HashMap<>();
-        filesToTrack.putAll(prevCommit.getFiles());
-        filesToTrack.putAll(stagingArea.getAddFiles());
-        for (String key : stagingArea.getRemoveFiles().keySet()) {
-            if (filesToTrack.containsKey(key)) {
-                filesToTrack.remove(key);
-            }
-        }
-        Commit newCommit = new Commit(msg, head, filesToTrack);
-        commits.put(newCommit.getShortHash(), newCommit);
-        branches.get(currentBranch).switchPointer(newCommit.getShortHash());
-        head = newCommit.getShortHash();
+        ObjectId tree = trees.update(prevCommit.getTree(), stagedChanges());
+        Commit newCommit = new Commit(msg, head, prevCommit.getGeneration() + 1, tree);
+        commits.put(newCommit);
+        branches.get(currentBranch).switchPointer(newCommit.getHash());
+        head = newCommit.getHash();
 
         stagingArea.clearStage();
         serialize();
@@ -254,26 +314,28 @@ public class Repository {
          * If file is tracked in the current commit, stage for removal and remove the file from CWD
          * */
 
-        File file = Utils.join(CWD, fileName);
-        HashMap<String, Blob> addFiles = stagingArea.getAddFiles();
+        String path = workingPath(fileName);
+        HashMap<String, ObjectId> addFiles = stagingArea.getAddFiles();
         Commit currentCommit = commits.get(head);
+        ObjectId committedId = path == null ? null : trees.blobId(currentCommit.getTree(), path);
 
 
-        if (!addFiles.containsKey(fileName) && !currentCommit.hasFile(fileName)) {
+        if (path == null || !addFiles.containsKey(path) && committedId == null) {
             System.out.println("No reason to remove the file.");
             return;
         }
+        fileName = path;
+        File file = Utils.join(CWD, fileName);
 
         if (addFiles.containsKey(fileName)) {
             stagingArea.removeFromAdd(fileName);
         }
 
-        if (currentCommit.hasFile(fileName)) {
+        if (committedId != null) {
+            stagingArea.addFileToRemoval(fileName, committedId);
             if (file.exists()) {
-                stagingArea.addFileToRemoval(file);
-                Utils.restrictedDelete(file);
-            } else {
-                stagingArea.addFileToRemoval(fileName, currentCommit.getFile(fileName));
+                deleteWorkingFile(fileName);
+                index.remove(fileName);
             }
         }
 
@@ -286,14 +348,13 @@ public class Repository {
             return;
         }
 
-        Commit currentCommit = commits.get(head);
-        while (currentCommit != null) {
+        CommitWalker history = new CommitWalker(commits, CommitWalker.Order.TOPO)
+                .include(head).firstParent();
+        for (Commit currentCommit : history) {
             System.out.println("===");
             System.out.println("commit " + currentCommit.getHash());
             System.out.println("Date: " + currentCommit.getTimestamp());
             System.out.println(currentCommit.getMessage() + "\n");
-
-            currentCommit = commits.get(currentCommit.getParent());
         }
     }
 
@@ -303,7 +364,7 @@ public class Repository {
             return;
         }
 
-        Iterator<Commit> iter = commits.values().iterator();
+        Iterator<Commit> iter = commits.all().iterator();
         while (iter.hasNext()) {
             Commit nextCommit = iter.next();
             System.out.println("===");
@@ -320,7 +381,7 @@ public class Repository {
         }
 
         int count = 0;
-        Iterator<Commit> iter = commits.values().iterator();
+        Iterator<Commit> iter = commits.all().iterator();
         while (iter.hasNext()) {
             Commit nextCommit = iter.next();
             if (nextCommit.getMessage().equals(message)) {
@@ -340,10 +401,10 @@ public class Repository {
             return;
         }
 
-        Commit currentCommit = commits.get(head);
-        List<String> allFiles = Utils.plainFilenamesIn(CWD);
-        HashMap<String, Blob> addFiles = stagingArea.getAddFiles();
-        HashMap<String, Blob> removeFiles = stagingArea.getRemoveFiles();
+        Map<String, ObjectId> headFiles = trees.files(commits.get(head).getTree());
+        List<String> allFiles = workingTree.files();
+        HashMap<String, ObjectId> addFiles = stagingArea.getAddFiles();
+        HashMap<String, ObjectId> removeFiles = stagingArea.getRemoveFiles();
 
         System.out.println("=== Branches ===");
         List<String> branchList = new ArrayList<String>(branches.keySet());
@@ -372,50 +433,54 @@ public class Repository {
         }
         System.out.print("\n");
         System.out.println("=== Modifications Not Staged For Commit ===");
-        printModifiedFiles();
+        printModifiedFiles(headFiles, allFiles);
         System.out.print("\n");
         System.out.println("=== Untracked Files ===");
         for (String fileName : allFiles) {
             File file = Utils.join(CWD, fileName);
 
-            if (!currentCommit.hasFile(fileName)
+            if (!headFiles.containsKey(fileName)
                     && !addFiles.containsKey(fileName) && file.isFile()) {
                 System.out.println(fileName);
             }
         }
         System.out.print("\n");
+
+        saveIndex();
     }
 
-    private void printModifiedFiles() {
-        Commit currentCommit = commits.get(head);
-        List<String> allFiles = Utils.plainFilenamesIn(CWD);
-        HashMap<String, Blob> addFiles = stagingArea.getAddFiles();
-        HashMap<String, Blob> removeFiles = stagingArea.getRemoveFiles();
+    /** Prints the files whose working copies differ from HEADFILES, the files
+     *  of the head commit, or from the staging area. ALLFILES are the files in
+     *  the working directory. */
+    private void printModifiedFiles(Map<String, ObjectId> headFiles, List<String> allFiles) {
+        HashMap<String, ObjectId> addFiles = stagingArea.getAddFiles();
+        HashMap<String, ObjectId> removeFiles = stagingArea.getRemoveFiles();
 
         HashSet<String> everyFile = new HashSet<String>();
         everyFile.addAll(allFiles);
         for (String file : addFiles.keySet()) {
             everyFile.add(file);
         }
-        for (String file : currentCommit.getFiles().keySet()) {
+        for (String file : headFiles.keySet()) {
             everyFile.add(file);
         }
         List<String> sortedFiles = new ArrayList<>(everyFile);
         Collections.sort(sortedFiles);
+        Map<String, ObjectId> workingIds = workingTree.hash(sortedFiles, index);
 
         for (String fileName : sortedFiles) {
             File file = Utils.join(CWD, fileName);
-            String currentContents = null;
-            String commitContents = null;
+            ObjectId currentContents = null;
+            ObjectId commitContents = null;
 
-            if (currentCommit.hasFile(fileName)) {
-                commitContents = currentCommit.getFile(fileName).getContents();
+            if (headFiles.containsKey(fileName)) {
+                commitContents = headFiles.get(fileName);
             } else {
                 commitContents = null;
             }
 
             if (file.exists()) {
-                currentContents = Utils.readContentsAsString(file);
+                currentContents = workingIds.get(fileName);
             } else {
                 currentContents = null;
             }
@@ -423,14 +488,14 @@ public class Repository {
             if (!file.exists() && addFiles.containsKey(fileName)) {
                 System.out.println(fileName + " (deleted)");
             } else if (!file.exists() && !removeFiles.containsKey(fileName)
-                    && currentCommit.hasFile(fileName)) {
+                    && headFiles.containsKey(fileName)) {
                 System.out.println(fileName + " (deleted)");
-            } else if (file.exists() && currentCommit.hasFile(fileName)
+            } else if (file.exists() && headFiles.containsKey(fileName)
                     && !currentContents.equals(commitContents)
                     && !addFiles.containsKey(fileName)) {
                 System.out.println(fileName + " (modified)");
             } else if (file.exists() && addFiles.containsKey(fileName)
-                    && !currentContents.equals(addFiles.get(fileName).getContents())) {
+                    && !currentContents.equals(addFiles.get(fileName))) {
                 System.out.println(fileName + " (modified)");
             }
         }
@@ -448,30 +513,20 @@ public class Repository {
          * If the file is already in the working directory, overwrite it
          * */
         Commit currentCommit = commits.get(head);
-        File file = Utils.join(CWD, fileName);
-        Blob commitFile = currentCommit.getFile(fileName);
+        String path = workingPath(fileName);
+        ObjectId commitFile = path == null ? null : trees.blobId(currentCommit.getTree(), path);
 
-        if (!currentCommit.hasFile(fileName)) {
+        if (commitFile == null) {
             System.out.println("File does not exist in that commit.");
             return;
         }
 
-        if (file.exists()) {
-            Utils.writeContents(file, commitFile.getContents());
-        } else {
-            File newFile = Utils.join(CWD, fileName);
-            try {
-                newFile.createNewFile();
-            } catch (IOException | ClassCastException excp) {
-                throw new IllegalArgumentException(excp.getMessage());
-            }
-            Utils.writeContents(newFile, commitFile.getContents());
-        }
+        restoreWorkingFile(commitFile, path);
 
         /** Serialize? */
     }
 
-    public void checkoutCommitShort(String commitId, String fileName) {
+    public void checkoutCommit(String commitId, String fileName) {
         if (!GITLET_DIR.exists()) {
             System.out.println("Not in an initialized Gitlet directory.");
             return;
@@ -483,66 +538,80 @@ public class Repository {
          * Takes version of file in given commit and puts it in the working directory
          * If file is already in working directory, overwrite it
          * */
-        if (!commits.containsKey(commitId)) {
-            System.out.println("No commit with that id exists.");
+        ObjectId id = resolveCommit(commitId);
+        if (id == null) {
             return;
         }
 
-        Commit currentCommit = commits.get(commitId);
-        File file = Utils.join(CWD, fileName);
-        Blob commitFile = currentCommit.getFile(fileName);
+        Commit currentCommit = commits.get(id);
+        String path = workingPath(fileName);
+        ObjectId commitFile = path == null ? null : trees.blobId(currentCommit.getTree(), path);
 
-        if (!currentCommit.hasFile(fileName)) {
+        if (commitFile == null) {
             System.out.println("File does not exist in that commit.");
             return;
         }
 
-        if (file.exists()) {
-            Utils.writeContents(file, commitFile.getContents());
-        } else {
-            File newFile = Utils.join(CWD, fileName);
-            try {
-                newFile.createNewFile();
-            } catch (IOException | ClassCastException excp) {
-                throw new IllegalArgumentException(excp.getMessage());
-            }
-            Utils.writeContents(newFile, commitFile.getContents());
-        }
-    }
+        restoreWorkingFile(commitFile, path);
 
-    public void checkoutCommit(String commitId, String fileName) {
-        if (!GITLET_DIR.exists()) {
-            System.out.println("Not in an initialized Gitlet directory.");
-            return;
-        }
+        /** Serialize? */
+    }
 
-        if (!commits.containsKey(commitId.substring(0, 6))) {
+    /** Returns the full id of the one commit whose id starts with PREFIX.
+     *  If there is no such commit, or more than one, prints why and returns
+     *  null. */
+    private ObjectId resolveCommit(String prefix) {
+        List<ObjectId> matches = commits.resolve(prefix);
+        if (matches.isEmpty()) {
             System.out.println("No commit with that id exists.");
-            return;
+            return null;
         }
+        if (matches.size() > 1) {
+            System.out.println("Commit id " + prefix + " is ambiguous. It could be:");
+            for (ObjectId id : matches) {
+                System.out.println(id + " " + commits.get(id).getMessage());
+            }
+            return null;
+        }
+        return matches.get(0);
+    }
 
-        Commit currentCommit = commits.get(commitId.substring(0, 6));
-        File file = Utils.join(CWD, fileName);
-        Blob commitFile = currentCommit.getFile(fileName);
+    /** Replaces the files of the commit FROM in the working directory with
+     *  those of the commit TO, returning false without changing anything if
+     *  an untracked file is in the way. Files that differ between the two
+     *  commits are found by comparing their trees, which skips every
+     *  subtree they share. Of the rest, only those whose working copies
+     *  were changed are written again. */
+    private boolean checkoutTree(Commit from, Commit to) {
+        Map<String, ObjectId> changes = trees.diff(from.getTree(), to.getTree());
 
-        if (!currentCommit.hasFile(fileName)) {
-            System.out.println("File does not exist in that commit.");
-            return;
+        /** Checking to see if any file is not being tracked by current commit */
+        for (Map.Entry<String, ObjectId> change : changes.entrySet()) {
+            if (change.getValue() != null && Utils.join(CWD, change.getKey()).isFile()
+                    && trees.blobId(from.getTree(), change.getKey()) == null) {
+                System.out.println("There is an untracked file in the way; "
+                        + "delete it, or add and commit it first.");
+                return false;
+            }
         }
 
-        if (file.exists()) {
-            Utils.writeContents(file, commitFile.getContents());
-        } else {
-            File newFile = Utils.join(CWD, fileName);
-            try {
-                newFile.createNewFile();
-            } catch (IOException | ClassCastException excp) {
-                throw new IllegalArgumentException(excp.getMessage());
+        /** Delete all files that are tracked by FROM but not by TO */
+        for (Map.Entry<String, ObjectId> change : changes.entrySet()) {
+            if (change.getValue() == null) {
+                deleteWorkingFile(change.getKey());
             }
-            Utils.writeContents(newFile, commitFile.getContents());
         }
 
-        /** Serialize? */
+        /** Writes all files in TO that aren't already there into the directory */
+        Map<String, ObjectId> toFiles = trees.files(to.getTree());
+        Map<String, ObjectId> workingIds = workingTree.hash(toFiles.keySet(), index);
+        for (Map.Entry<String, ObjectId> file : toFiles.entrySet()) {
+            if (changes.containsKey(file.getKey())
+                    || !file.getValue().equals(workingIds.get(file.getKey()))) {
+                restoreWorkingFile(file.getValue(), file.getKey());
+            }
+        }
+        return true;
     }
 
     public void checkoutBranch(String branchName) {
@@ -564,47 +633,13 @@ public class Repository {
         }
 
         /** Variables */
-        List<String> allFiles = Utils.plainFilenamesIn(CWD);
-        Iterator<String> fileIter = allFiles.iterator();
         Branch current = branches.get(currentBranch);
         Branch given = branches.get(branchName);
         Commit currentBranchCommit = commits.get(current.getCommit());
         Commit givenBranchCommit = commits.get(given.getCommit());
-        HashMap<String, Blob> filesInGivenCommit = givenBranchCommit.getFiles();
-        HashMap<String, Blob> filesInCurrentCommit = currentBranchCommit.getFiles();
-
-        /** Checking to see if any file is not being tracked by current commit */
-        while (fileIter.hasNext()) {
-            String nextFile = fileIter.next();
-            if (!currentBranchCommit.hasFile(nextFile) && givenBranchCommit.hasFile(nextFile)) {
-                System.out.println("There is an untracked file in the way; "
-                        + "delete it, or add and commit it first.");
-                return;
-            }
-        }
-
-        /** Delete all files that are tracked by current commit but not by given branch commit */
-        for (String fileName : filesInCurrentCommit.keySet()) {
-            File file = Utils.join(CWD, fileName);
-            if (!filesInGivenCommit.containsKey(fileName)) {
-                Utils.restrictedDelete(file);
-            }
-        }
 
-        /** Writes all files in given branch commit into the directory */
-        for (String fileName : filesInGivenCommit.keySet()) {
-            File file = Utils.join(CWD, fileName);
-            if (file.exists()) {
-                Utils.writeContents(file, givenBranchCommit.getFile(fileName).getContents());
-            } else {
-                File newFile = Utils.join(CWD, fileName);
-                try {
-                    newFile.createNewFile();
-                } catch (IOException | ClassCastException excp) {
-                    throw new IllegalArgumentException(excp.getMessage());
-                }
-                Utils.writeContents(newFile, givenBranchCommit.getFile(fileName).getContents());
-            }
+        if (!checkoutTree(currentBranchCommit, givenBranchCommit)) {
+            return;
         }
 
         /** Changing current branch, head, and clearing staging area*/
@@ -656,121 +691,28 @@ public class Repository {
         serialize();
     }
 
-    public void resetShort(String commitId) {
-        if (!GITLET_DIR.exists()) {
-            System.out.println("Not in an initialized Gitlet directory.");
-            return;
-        }
-
-        List<String> allFiles = Utils.plainFilenamesIn(CWD);
-        Iterator<String> fileIter = allFiles.iterator();
-        Commit givenCommit = commits.get(commitId);
-        Commit currentCommit = commits.get(head);
-        HashMap<String, Blob> filesInGivenCommit = givenCommit.getFiles();
-        HashMap<String, Blob> filesInCurrentCommit = currentCommit.getFiles();
-        Branch branch = branches.get(currentBranch);
-
-        if (!commits.containsKey(commitId)) {
-            System.out.println("No commit with that id exists.");
-            return;
-        }
-
-        /** Checking to see if any file is not being tracked by current commit */
-        while (fileIter.hasNext()) {
-            String nextFile = fileIter.next();
-            if (!currentCommit.hasFile(nextFile) && givenCommit.hasFile(nextFile)) {
-                System.out.println("There is an untracked file in the way; "
-                        + "delete it, or add and commit it first.");
-                return;
-            }
-        }
-
-        for (String fileName : filesInGivenCommit.keySet()) {
-            File file = Utils.join(CWD, fileName);
-            if (file.exists()) {
-                Utils.writeContents(file, givenCommit.getFile(fileName).getContents());
-            } else {
-                File newFile = Utils.join(CWD, fileName);
-                try {
-                    newFile.createNewFile();
-                } catch (IOException | ClassCastException excp) {
-                    throw new IllegalArgumentException(excp.getMessage());
-                }
-                Utils.writeContents(newFile, givenCommit.getFile(fileName).getContents());
-            }
-        }
-
-        /** Delete all files that are tracked by current commit but not by given branch commit */
-        for (String fileName : filesInCurrentCommit.keySet()) {
-            File file = Utils.join(CWD, fileName);
-            if (!filesInGivenCommit.containsKey(fileName)) {
-                Utils.restrictedDelete(file);
-            }
-        }
-
-        head = commitId.substring(0, 6);
-        branch.switchPointer(commitId);
-        stagingArea.clearStage();
-
-        serialize();
-    }
-
     public void reset(String commitId) {
         if (!GITLET_DIR.exists()) {
             System.out.println("Not in an initialized Gitlet directory.");
             return;
         }
 
-        String shortCommitId = commitId.substring(0, 6);
-        if (!commits.containsKey(shortCommitId)) {
-            System.out.println("No commit with that id exists.");
+        ObjectId id = resolveCommit(commitId);
+        if (id == null) {
             return;
         }
 
         /** Variables */
-        List<String> allFiles = Utils.plainFilenamesIn(CWD);
-        Iterator<String> fileIter = allFiles.iterator();
-        Commit givenCommit = commits.get(shortCommitId);
+        Commit givenCommit = commits.get(id);
         Commit currentCommit = commits.get(head);
-        HashMap<String, Blob> filesInGivenCommit = givenCommit.getFiles();
-        HashMap<String, Blob> filesInCurrentCommit = currentCommit.getFiles();
         Branch branch = branches.get(currentBranch);
 
-        /** Checking to see if any file is not being tracked by current commit */
-        while (fileIter.hasNext()) {
-            String nextFile = fileIter.next();
-            if (!currentCommit.hasFile(nextFile) && givenCommit.hasFile(nextFile)) {
-                System.out.println("There is an untracked file in the way; "
-                        + "delete it, or add and commit it first.");
-                return;
-            }
-        }
-
-        for (String fileName : filesInGivenCommit.keySet()) {
-            File file = Utils.join(CWD, fileName);
-            if (file.exists()) {
-                Utils.writeContents(file, givenCommit.getFile(fileName).getContents());
-            } else {
-                File newFile = Utils.join(CWD, fileName);
-                try {
-                    newFile.createNewFile();
-                } catch (IOException | ClassCastException excp) {
-                    throw new IllegalArgumentException(excp.getMessage());
-                }
-                Utils.writeContents(newFile, givenCommit.getFile(fileName).getContents());
-            }
-        }
-
-        /** Delete all files that are tracked by current commit but not by given branch commit */
-        for (String fileName : filesInCurrentCommit.keySet()) {
-            File file = Utils.join(CWD, fileName);
-            if (!filesInGivenCommit.containsKey(fileName)) {
-                Utils.restrictedDelete(file);
-            }
+        if (!checkoutTree(currentCommit, givenCommit)) {
+            return;
         }
 
-        head = shortCommitId;
-        branch.switchPointer(shortCommitId);
+        head = id;
+        branch.switchPointer(id);
         stagingArea.clearStage();
 
         serialize();
@@ -790,24 +732,26 @@ public class Repository {
             System.out.println("Cannot merge a branch with itself");
             return;
         }
-        Iterator<String> fileIter = Utils.plainFilenamesIn(CWD).iterator();
         Branch current = branches.get(currentBranch);
         Branch given = branches.get(branchName);
         Commit currentCommit = commits.get(head);
         Commit givenCommit = commits.get(given.getCommit());
-        HashMap<String, Blob> stagedFiles = stagingArea.getAddFiles();
-        HashMap<String, Blob> removedFiles = stagingArea.getRemoveFiles();
+        HashMap<String, ObjectId> stagedFiles = stagingArea.getAddFiles();
+        HashMap<String, ObjectId> removedFiles = stagingArea.getRemoveFiles();
         Commit splitPoint = getSplitPoint(branchName);
 
-        /** Checking to see if any file is not being tracked by current commit */
-        while (fileIter.hasNext()) {
-            String nextFile = fileIter.next();
-            if (!givenCommit.hasFile(nextFile)) {
+        /** Checking to see if any file is not being tracked by current commit.
+         * Only files that differ between the two commits can be in the way. */
+        Map<String, ObjectId> incoming = trees.diff(currentCommit.getTree(), givenCommit.getTree());
+        Map<String, ObjectId> workingIds = workingTree.hash(incoming.keySet(), index);
+        for (Map.Entry<String, ObjectId> change : incoming.entrySet()) {
+            String nextFile = change.getKey();
+            ObjectId currentContents = workingIds.get(nextFile);
+            if (change.getValue() == null || currentContents == null) {
                 continue;
             }
-            String currentContents = Utils.readContentsAsString(Utils.join(CWD, nextFile));
-            String givenContents = givenCommit.getFile(nextFile).getContents();
-            if (!currentCommit.hasFile(nextFile) && givenCommit.hasFile(nextFile)
+            ObjectId givenContents = change.getValue();
+            if (trees.blobId(currentCommit.getTree(), nextFile) == null
                     && !currentContents.equals(givenContents)
                     && !stagedFiles.containsKey(nextFile)) {
                 System.out.println("There is an untracked file in the way; "
@@ -820,116 +764,66 @@ public class Repository {
             return;
         }
 
-        if (splitPoint.getShortHash().equals(given.getCommit())) {
+        if (splitPoint.getHash().equals(given.getCommit())) {
             System.out.println("Given branch is an ancestor of the current branch.");
             return;
         }
-        if (splitPoint.getShortHash().equals(current.getCommit())) {
+        if (splitPoint.getHash().equals(current.getCommit())) {
             checkoutBranch(branchName);
             System.out.println("Current branch fast-forwarded.");
             return;
         }
 
-        HashMap<String, Blob> files = new HashMap<>();
-        files.putAll(splitPoint.getFiles());
-        files.putAll(currentCommit.getFiles());
-        files.putAll(givenCommit.getFiles());
+        /** Files that neither branch changed since the split point are left alone */
+        Set<String> files = new TreeSet<>();
+        files.addAll(trees.diff(splitPoint.getTree(), currentCommit.getTree()).keySet());
+        files.addAll(trees.diff(splitPoint.getTree(), givenCommit.getTree()).keySet());
         mergeFiles(splitPoint, branchName, files);
         mergeCommit("Merged " + branchName + " into " + currentBranch + ".", branchName);
     }
 
     private Commit getSplitPoint(String branchName) {
         /** Gets split point of current branch and given branch */
-        Branch current = branches.get(currentBranch);
         Branch given = branches.get(branchName);
-        Commit currentCommit = commits.get(head);
-        Commit givenCommit = commits.get(given.getCommit());
-        ArrayList<Commit> currentBranchCommits = new ArrayList<>();
-        ArrayList<Commit> givenBranchCommits = new ArrayList<>();
-        Commit splitPoint = null;
-
-        if (given.getCommit().equals(head)) {
-            splitPoint = commits.get(head);
-        } else {
-            Commit currentBranchCommit = commits.get(current.getCommit());
-            ArrayList<Commit> currentHeadCommits = new ArrayList<>();
-            currentHeadCommits.add(currentBranchCommit);
-            addCommitBranch(currentHeadCommits, currentBranchCommits);
-
-            Commit givenBranchCommit = commits.get(given.getCommit());
-            ArrayList<Commit> givenHeadCommits = new ArrayList<>();
-            givenHeadCommits.add(givenBranchCommit);
-            addCommitBranch(givenHeadCommits, givenBranchCommits);
-
-            for (int i = 0; i < currentBranchCommits.size(); i++) {
-                if (givenBranchCommits.contains(currentBranchCommits.get(i))) {
-                    splitPoint = currentBranchCommits.get(i);
-                    break;
-                }
-            }
-        }
-
-        return splitPoint;
-    }
-
-    private void addCommitBranch(ArrayList<Commit> headCommits, ArrayList<Commit> list) {
-        if (headCommits.get(0).getParent() == null) {
-            list.add(headCommits.get(0));
-            return;
-        }
-
-        ArrayList<Commit> parentCommits = new ArrayList<>();
-
-        for (Commit commit : headCommits) {
-            list.add(commit);
-
-            if (commit.isMergeCommit()) {
-                parentCommits.add(commits.get(commit.getParent()));
-                parentCommits.add(commits.get(commit.getSecondParent()));
-            } else {
-                if (!parentCommits.contains(commits.get(commit.getParent()))) {
-                    parentCommits.add(commits.get(commit.getParent()));
-                }
-            }
-        }
-
-        addCommitBranch(parentCommits, list);
-
+        return MergeBase.find(commits, head, given.getCommit());
     }
 
-    private void mergeFiles(Commit splitPoint, String givenBranch, HashMap<String, Blob> files) {
+    private void mergeFiles(Commit splitPoint, String givenBranch, Set<String> files) {
         Branch given = branches.get(givenBranch);
         Commit currentCommit = commits.get(head);
         Commit givenCommit = commits.get(given.getCommit());
 
-        for (String fileName : files.keySet()) {
+        for (String fileName : files) {
             File file = Utils.join(CWD, fileName);
+            ObjectId splitPointId = trees.blobId(splitPoint.getTree(), fileName);
+            ObjectId currentId = trees.blobId(currentCommit.getTree(), fileName);
+            ObjectId givenId = trees.blobId(givenCommit.getTree(), fileName);
 
             boolean presentAtSplitPoint = false;
             boolean presentAtCurrentBranch = false;
             boolean presentAtGivenBranch = false;
             boolean modifiedInCurrentBranch = false;
             boolean modifiedInGivenBranch = false;
-            String contentsAtSplitPoint = null;
-            String contentsAtCurrentBranch = null;
-            String contentsAtGivenBranch = null;
+            ObjectId contentsAtSplitPoint = null;
+            ObjectId contentsAtCurrentBranch = null;
+            ObjectId contentsAtGivenBranch = null;
 
-            if (splitPoint.hasFile(fileName)) {
+            if (splitPointId != null) {
                 presentAtSplitPoint = true;
-                contentsAtSplitPoint = splitPoint.getFile(fileName).getContents();
+                contentsAtSplitPoint = splitPointId;
             }
 
-            if (currentCommit.hasFile(fileName)) {
+            if (currentId != null) {
                 presentAtCurrentBranch = true;
-                contentsAtCurrentBranch = currentCommit.getFile(fileName).getContents();
+                contentsAtCurrentBranch = currentId;
                 modifiedInCurrentBranch = !contentsAtCurrentBranch.equals(contentsAtSplitPoint);
             } else {
                 modifiedInCurrentBranch = contentsAtSplitPoint != null;
             }
 
-            if (givenCommit.hasFile(fileName)) {
+            if (givenId != null) {
                 presentAtGivenBranch = true;
-                contentsAtGivenBranch = givenCommit.getFile(fileName).getContents();
+                contentsAtGivenBranch = givenId;
                 modifiedInGivenBranch = !contentsAtGivenBranch.equals(contentsAtSplitPoint);
             } else {
                 modifiedInGivenBranch = contentsAtSplitPoint != null;
@@ -938,39 +832,43 @@ public class Repository {
 
             if (presentAtSplitPoint && presentAtCurrentBranch && presentAtGivenBranch
                     && modifiedInGivenBranch && !modifiedInCurrentBranch) {
-                Utils.writeContents(file, contentsAtGivenBranch);
-                stagingArea.addFileToAdd(file);
+                restoreWorkingFile(contentsAtGivenBranch, fileName);
+                stagingArea.addFileToAdd(fileName, contentsAtGivenBranch);
             } else if (modifiedInCurrentBranch && modifiedInGivenBranch) {
                 if ((presentAtCurrentBranch != presentAtGivenBranch)
                         || (presentAtCurrentBranch && presentAtGivenBranch
                         && !contentsAtCurrentBranch.equals(contentsAtGivenBranch))) {
-                    if (contentsAtCurrentBranch == null) {
-                        contentsAtCurrentBranch = "";
+                    String currentText = "";
+                    String givenText = "";
+                    if (contentsAtCurrentBranch != null) {
+                        currentText = objects.readAsString(contentsAtCurrentBranch);
                     }
-                    if (contentsAtGivenBranch == null) {
-                        contentsAtGivenBranch = "";
+                    if (contentsAtGivenBranch != null) {
+                        givenText = objects.readAsString(contentsAtGivenBranch);
                     }
 
                     String newContents = "<<<<<<< HEAD" + "\n"
-                            + contentsAtCurrentBranch + "=======" + "\n"
-                            + contentsAtGivenBranch + ">>>>>>>" + "\n";
-                    Utils.writeContents(file, newContents);
-                    stagingArea.addFileToAdd(file);
+                            + currentText + "=======" + "\n"
+                            + givenText + ">>>>>>>" + "\n";
+                    file.getParentFile().mkdirs();
+                    /** In place, as working files are restored, keeping
+                     *  the user's file and its permissions */
+                    try {
+                        Files.write(file.toPath(), newContents.getBytes(StandardCharsets.UTF_8));
+                    } catch (IOException excp) {
+                        throw new IllegalArgumentException(excp.getMessage());
+                    }
+                    stagingArea.addFileToAdd(fileName, objects.writeFile(file));
                     mergeConflict = true;
                 }
             } else if (!presentAtSplitPoint && !presentAtCurrentBranch && presentAtGivenBranch) {
                 /** Checked out and staged */
-                try {
-                    file.createNewFile();
-                } catch (IOException | ClassCastException excp) {
-                    throw new IllegalArgumentException(excp.getMessage());
-                }
-                Utils.writeContents(file, contentsAtGivenBranch);
-                stagingArea.addFileToAdd(file);
+                restoreWorkingFile(contentsAtGivenBranch, fileName);
+                stagingArea.addFileToAdd(fileName, contentsAtGivenBranch);
             } else if (presentAtSplitPoint && !modifiedInCurrentBranch && !presentAtGivenBranch) {
                 /** Removed and untracked */
-                stagingArea.addFileToRemoval(file);
-                Utils.restrictedDelete(file);
+                stagingArea.addFileToRemoval(fileName, contentsAtCurrentBranch);
+                deleteWorkingFile(fileName);
             }
         }
     }
@@ -982,27 +880,78 @@ public class Repository {
         }
 
         Commit prevFirstCommit = commits.get(head);
-//        Commit prevSecondCommit = commits.get(branches.get(givenBranch).getCommit());
-        HashMap<String, Blob> filesToTrack = new HashMap<>();
-        filesToTrack.putAll(prevFirstCommit.getFiles());
-//        filesToTrack.putAll(prevSecondCommit.getFiles());
-        filesToTrack.putAll(stagingArea.getAddFiles());
-        for (String key : stagingArea.getRemoveFiles().keySet()) {
-            if (filesToTrack.containsKey(key)) {
-                filesToTrack.remove(key);
-            }
-        }
+        Commit prevSecondCommit = commits.get(branches.get(givenBranch).getCommit());
+        ObjectId tree = trees.update(prevFirstCommit.getTree(), stagedChanges());
+        int generation = Math.max(prevFirstCommit.getGeneration(),
+                prevSecondCommit.getGeneration()) + 1;
         Commit newCommit = new Commit(message, head,
-                branches.get(givenBranch).getCommit(), filesToTrack);
-        commits.put(newCommit.getShortHash(), newCommit);
-        branches.get(currentBranch).switchPointer(newCommit.getShortHash());
-        head = newCommit.getShortHash();
+                prevSecondCommit.getHash(), generation, tree);
+        commits.put(newCommit);
+        branches.get(currentBranch).switchPointer(newCommit.getHash());
+        head = newCommit.getHash();
 
         stagingArea.clearStage();
 
         serialize();
     }
 
+    /** Packs every object into a single pack, storing the versions of each
+     *  file as deltas against each other. */
+    public void gc() {
+        if (!GITLET_DIR.exists()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+
+        commits.repack();
+        commits.writeGraph();
+        List<ObjectId> tips = new ArrayList<>();
+        for (Branch branch : branches.values()) {
+            tips.add(branch.getCommit());
+        }
+        commits.writeBitmaps(trees, tips);
+
+        /** Collect the versions of each file, newest commit first. */
+        List<Commit> history = commits.all();
+        history.sort((a, b) -> a.getGeneration() != b.getGeneration()
+                     ? Integer.compare(b.getGeneration(), a.getGeneration())
+                     : Long.compare(b.getTime(), a.getTime()));
+        LinkedHashMap<String, LinkedHashSet<ObjectId>> versions = new LinkedHashMap<>();
+        for (Map.Entry<String, ObjectId> entry : stagingArea.getAddFiles().entrySet()) {
+            versions.computeIfAbsent(entry.getKey(), k -> new LinkedHashSet<>())
+                    .add(entry.getValue());
+        }
+        HashSet<ObjectId> seenTrees = new HashSet<>();
+        for (Commit commit : history) {
+            collectVersions(commit.getTree(), "", seenTrees, versions);
+        }
+
+        List<List<ObjectId>> chains = new ArrayList<>();
+        for (LinkedHashSet<ObjectId> ids : versions.values()) {
+            chains.add(new ArrayList<>(ids));
+        }
+        objects.repack(chains);
+    }
+
+    /** Adds the blob id of every file under the tree ID to VERSIONS, under
+     *  its path. Trees in SEEN were already collected and are skipped, along
+     *  with everything under them. */
+    private void collectVersions(ObjectId id, String prefix, HashSet<ObjectId> seen,
+                                 Map<String, LinkedHashSet<ObjectId>> versions) {
+        if (!seen.add(id)) {
+            return;
+        }
+        for (Map.Entry<String, Tree.Entry> entry : trees.get(id).entries().entrySet()) {
+            String path = prefix + entry.getKey();
+            if (entry.getValue().isTree()) {
+                collectVersions(entry.getValue().getId(), path + "/", seen, versions);
+            } else {
+                versions.computeIfAbsent(path, k -> new LinkedHashSet<>())
+                        .add(entry.getValue().getId());
+            }
+        }
+    }
+
     public void addRemote(String name, String dir) {
         if (!GITLET_DIR.exists()) {
             System.out.println("Not in an initialized Gitlet directory.");
@@ -1014,7 +963,7 @@ public class Repository {
             return;
         }
 
-        File newDir = Utils.join(dir, ".gitlet");
+        File newDir = Bundle.isBundle(new File(dir)) ? new File(dir) : Utils.join(dir, ".gitlet");
         remoteRepos.put(name, newDir);
         serialize();
     }
@@ -1045,231 +994,494 @@ public class Repository {
         }
 
         File remoteDir = remoteRepos.get(name);
+        if (Bundle.isBundle(remoteDir)) {
+            pushBundle(remoteDir, branchName);
+            return;
+        }
         if (!remoteDir.exists()) {
             System.out.println("Remote directory not found.");
             return;
         }
 
-        HashMap<String, Commit> remoteCommits = Utils.readObject(Utils.join(remoteDir, "commits"),
-                HashMap.class);
-        HashMap<String, Branch> remoteBranches = Utils.readObject(Utils.join(remoteDir, "branches"),
-                HashMap.class);
-        Stage remoteStagingArea = Utils.readObject(Utils.join(remoteDir, "stage"),
-                Stage.class);
-        String remoteHead = Utils.readContentsAsString(Utils.join(remoteDir, "head.txt"));
-        String remoteCurrentBranch = Utils.readContentsAsString(Utils.join(remoteDir,
-                "currentbranch" + ".txt"));
+        RepositoryLock remoteLock = RepositoryLock.acquire(remoteDir);
+        try {
+            pushTo(remoteDir, branchName);
+        } finally {
+            RepositoryLock.release(remoteLock);
+        }
+    }
+
+    /** Pushes the branch BRANCHNAME into the repository whose .gitlet
+     *  directory is REMOTEDIR, which must be locked. */
+    private void pushTo(File remoteDir, String branchName) {
+        int remoteLevel = new Config(Utils.join(remoteDir, "config")).compressionLevel();
+        upgradeRemote(remoteDir, remoteLevel);
+        CommitStore remoteCommits = new CommitStore(Utils.join(remoteDir, "commits"), remoteLevel);
+        RefJournal remoteRefs = new RefJournal(remoteDir);
+        HashMap<String, Branch> remoteBranches = remoteRefs.getBranches();
+        ObjectId remoteHead = remoteRefs.getHead();
+        String remoteCurrentBranch = remoteRefs.getCurrentBranch();
+        ObjectStore remoteObjects = new ObjectStore(Utils.join(remoteDir, "objects"), remoteLevel);
         Branch branchCurrent = branches.get(branchName);
         Commit currentCommit = commits.get(branchCurrent.getCommit());
+        /** The remote's tips that are here too, before any of them moves */
+        List<ObjectId> common = commonTips(remoteBranches.values(), commits);
         if (!remoteBranches.containsKey(branchName)) {
             /** Add branch */
-            ArrayList<Commit> allBranchCommits = new ArrayList<>();
-            ArrayList<Commit> headCommits = new ArrayList<>();
-            headCommits.add(currentCommit);
-            addCommitBranch(headCommits, allBranchCommits);
-            for (Commit commit : allBranchCommits) {
-                if (!remoteCommits.containsKey(commit)) {
-                    remoteCommits.put(commit.getShortHash(), commit);
-                }
-            }
             Branch newBranch = new Branch(branchName, currentCommit);
             remoteBranches.put(branchName, newBranch);
         } else {
             /** Checking to see if remote branch's head is in the history of current local head */
             Branch remoteBranch = remoteBranches.get(branchName);
-            Commit remoteCommit = remoteCommits.get(remoteBranch.getCommit());
-            ArrayList<Commit> allBranchCommits = new ArrayList<>();
-            ArrayList<Commit> headCommits = new ArrayList<>();
-            headCommits.add(currentCommit);
-            addCommitBranch(headCommits, allBranchCommits);
-            if (!allBranchCommits.contains(remoteCommit)) {
+            if (!MergeBase.isAncestor(commits, remoteBranch.getCommit(),
+                    currentCommit.getHash())) {
                 System.out.println("Please pull down remote changes before pushing.");
                 return;
-            } else {
-                /** Add future commits to remote branch */
-                ArrayList<ArrayList<Commit>> branchTraversal = new ArrayList<>();
-                ArrayList<Commit> headCommit = new ArrayList<>();
-                headCommit.add(currentCommit);
-                addBranchCommits(headCommit, branchTraversal);
-                ArrayList<Commit> futureCommits = new ArrayList<>();
-                for (ArrayList<Commit> commitList : branchTraversal) {
-                    if (commitList.contains(remoteCommit)) {
-                        break;
-                    } else {
-                        for (Commit commit : commitList) {
-                            futureCommits.add(commit);
-                        }
-                    }
-                }
-
-                for (Commit commit : futureCommits) {
-                    String hash = commit.getShortHash();
-                    remoteCommits.put(hash, commit);
-                }
             }
-
+            remoteBranch.switchPointer(currentCommit.getHash());
+            if (remoteCurrentBranch.equals(branchName)) {
+                remoteHead = currentCommit.getHash();
+            }
         }
-        serializeRemote(remoteDir, remoteCommits, remoteBranches, remoteStagingArea,
-                remoteHead, remoteCurrentBranch);
-    }
-
-    private void addBranchCommits(ArrayList<Commit> headCommits,
-                                  ArrayList<ArrayList<Commit>> list) {
 
-        list.add(headCommits);
-        if (headCommits.get(0).getParent() == null) {
-            return;
+        /** Only the commits after the common tips are new to the remote */
+        CommitWalker newCommits = new CommitWalker(commits, CommitWalker.Order.TOPO)
+                .include(currentCommit.getHash());
+        for (ObjectId id : common) {
+            newCommits.exclude(id);
         }
-        ArrayList<Commit> newHeadCommits = new ArrayList<>();
-        for (Commit commit : headCommits) {
-            if (commit.isMergeCommit()) {
-                Commit firstParent = commits.get(commit.getParent());
-                Commit secondParent = commits.get(commit.getSecondParent());
-                newHeadCommits.add(firstParent);
-                newHeadCommits.add(secondParent);
-            } else {
-                Commit parent = commits.get(commit.getParent());
-                if (!newHeadCommits.contains(parent)) {
-                    newHeadCommits.add(parent);
+        CommitBitmaps.Reachable remoteHas = null;
+        CommitBitmaps.Reachable want = null;
+        if (commits.bitmaps() != null) {
+            if (!common.isEmpty()) {
+                remoteHas = commits.bitmaps().reachable(common, commits, trees);
+            }
+            want = commits.bitmaps().reachable(List.of(currentCommit.getHash()), commits, trees);
+        }
+        List<ObjectId> sent = new ArrayList<>();
+        try (ObjectTransfer transfer = new ObjectTransfer(trees, remoteObjects, remoteHas,
+                                                          config.threads())) {
+            if (want != null) {
+                transfer.addMissing(want);
+            }
+            for (CommitGraph.Node commit : newCommits.nodes()) {
+                if (!remoteCommits.contains(commit.getHash())) {
+                    transfer.addTree(commit.getTree());
+                    sent.add(commit.getHash());
                 }
             }
+            transfer.finish();
         }
-
-        addBranchCommits(newHeadCommits, list);
+        /** Parents before children, once everything they point to is there */
+        for (int i = sent.size() - 1; i >= 0; i -= 1) {
+            remoteCommits.put(commits.get(sent.get(i)));
+        }
+        remoteRefs.save(remoteBranches, remoteHead, remoteCurrentBranch);
     }
+
     public void fetch(String name, String branchName) {
+        fetchBranch(name, branchName);
+    }
+
+    /** Fetches the branch BRANCHNAME of the remote NAME into the branch
+     *  NAME/BRANCHNAME, and returns true, or prints why it can't and
+     *  returns false. */
+    private boolean fetchBranch(String name, String branchName) {
         if (!GITLET_DIR.exists()) {
             System.out.println("Not in an initialized Gitlet directory.");
-            return;
+            return false;
         }
 
         if (!remoteRepos.containsKey(name)) {
             System.out.println("Invalid remote name");
-            return;
+            return false;
         }
 
         File remoteDir = remoteRepos.get(name);
+        if (Bundle.isBundle(remoteDir)) {
+            return fetchBundle(remoteDir, name, branchName);
+        }
         if (!remoteDir.exists()) {
             System.out.println("Remote directory not found.");
-            return;
+            return false;
         }
 
-        HashMap<String, Commit> remoteCommits = Utils.readObject(Utils.join(remoteDir, "commits"),
-                HashMap.class);
-        HashMap<String, Branch> remoteBranches = Utils.readObject(Utils.join(remoteDir, "branches"),
-                HashMap.class);
-        Stage remoteStagingArea = Utils.readObject(Utils.join(remoteDir, "stage"),
-                Stage.class);
-        String remoteHead = Utils.readContentsAsString(Utils.join(remoteDir, "head.txt"));
-        String remoteCurrentBranch = Utils.readContentsAsString(Utils.join(remoteDir,
-                "currentbranch" + ".txt"));
+        RepositoryLock remoteLock = RepositoryLock.acquire(remoteDir);
+        try {
+            return fetchFrom(remoteDir, name, branchName);
+        } finally {
+            RepositoryLock.release(remoteLock);
+        }
+    }
+
+    /** Fetches the branch BRANCHNAME of the repository whose .gitlet
+     *  directory is REMOTEDIR, the remote NAME, as fetchBranch does. The
+     *  remote must be locked, so that no command changes its refs or
+     *  repacks its objects while they are read. */
+    private boolean fetchFrom(File remoteDir, String name, String branchName) {
+        int remoteLevel = new Config(Utils.join(remoteDir, "config")).compressionLevel();
+        upgradeRemote(remoteDir, remoteLevel);
+        CommitStore remoteCommits = new CommitStore(Utils.join(remoteDir, "commits"), remoteLevel);
+        HashMap<String, Branch> remoteBranches = new RefJournal(remoteDir).getBranches();
 
         if (!remoteBranches.containsKey(branchName)) {
             System.out.println("That remote does not have that branch.");
-            return;
+            return false;
         }
 
+        ObjectStore remoteObjects = new ObjectStore(Utils.join(remoteDir, "objects"), remoteLevel);
         Branch remoteBranch = remoteBranches.get(branchName);
         Commit remoteCommit = remoteCommits.get(remoteBranch.getCommit());
+        String localName = name + "/" + branchName;
+        /** Our tips that the remote has too, tracking branches included */
+        List<ObjectId> common = commonTips(branches.values(), remoteCommits);
+
+        /** Whatever is in the history of a common tip is already here */
+        CommitWalker newCommits = new CommitWalker(remoteCommits, CommitWalker.Order.TOPO)
+                .include(remoteCommit.getHash());
+        for (ObjectId id : common) {
+            newCommits.exclude(id);
+        }
+        TreeStore remoteTrees = new TreeStore(remoteObjects);
+        CommitBitmaps.Reachable localHas = null;
+        CommitBitmaps.Reachable want = null;
+        if (remoteCommits.bitmaps() != null) {
+            if (!common.isEmpty()) {
+                localHas = remoteCommits.bitmaps().reachable(common, remoteCommits, remoteTrees);
+            }
+            want = remoteCommits.bitmaps().reachable(List.of(remoteCommit.getHash()),
+                                                     remoteCommits, remoteTrees);
+        }
 
-        if (!branches.containsKey(name + "/" + branchName)) {
-            ArrayList<Commit> allBranchCommits = new ArrayList<>();
-            ArrayList<Commit> headCommits = new ArrayList<>();
-            headCommits.add(remoteCommit);
-            addCommitBranch(headCommits, allBranchCommits);
-
-            for (Commit commit : allBranchCommits) {
-                if (!commits.containsKey(commit)) {
-                    commits.put(commit.getShortHash(), commit);
+        List<ObjectId> fetched = new ArrayList<>();
+        try (ObjectTransfer transfer = new ObjectTransfer(remoteTrees, objects, localHas,
+                                                          config.threads())) {
+            if (want != null) {
+                transfer.addMissing(want);
+            }
+            for (CommitGraph.Node commit : newCommits.nodes()) {
+                if (!commits.contains(commit.getHash())) {
+                    transfer.addTree(commit.getTree());
+                    fetched.add(commit.getHash());
                 }
             }
+            transfer.finish();
+        }
+        for (int i = fetched.size() - 1; i >= 0; i -= 1) {
+            commits.put(remoteCommits.get(fetched.get(i)));
+        }
 
-            Branch newBranch = new Branch(name + "/" + branchName, remoteCommit);
-            branches.put(name + "/" + branchName, newBranch);
+        /** The branch only moves once everything it points to is here */
+        if (!branches.containsKey(localName)) {
+            Branch newBranch = new Branch(localName, remoteCommit);
+            branches.put(localName, newBranch);
         } else {
-            Branch branchCurrent = branches.get(name + "/" + branchName);
-            Commit currentCommit = commits.get(branchCurrent.getCommit());
-            ArrayList<Commit> allBranchCommits = new ArrayList<>();
-            ArrayList<Commit> headCommits = new ArrayList<>();
-            headCommits.add(remoteCommit);
-            addCommitBranch(headCommits, allBranchCommits);
-
-            for (Commit commit : allBranchCommits) {
-                if (!commits.containsKey(commit)) {
-                    commits.put(commit.getShortHash(), commit);
+            Branch branchCurrent = branches.get(localName);
+            branchCurrent.switchPointer(remoteCommit.getHash());
+        }
+        serialize();
+        return true;
+    }
+
+    /** Converts the repository whose .gitlet directory is REMOTEDIR, which
+     *  must be locked, to the current layout if the first version made it,
+     *  as opening a repository does, compressing what it writes at LEVEL.
+     *  Push and fetch do this before reading anything of the remote. */
+    private static void upgradeRemote(File remoteDir, int level) {
+        if (LayoutUpgrade.isNeeded(remoteDir)) {
+            LayoutUpgrade.run(remoteDir, level);
+        }
+    }
+
+    /** Writes the branch BRANCHNAME to the bundle FILE, replacing it with
+     *  a bundle of the same refs and the branch at its commit here. Any
+     *  history of the old bundle this repository lacks is taken into it
+     *  first, so the new bundle holds all of it and needs no commits the
+     *  old one didn't: whoever could fetch from the old bundle can fetch
+     *  any of its branches from the new one. */
+    private void pushBundle(File file, String branchName) {
+        if (!file.getAbsoluteFile().getParentFile().isDirectory()) {
+            System.out.println("Remote directory not found.");
+            return;
+        }
+        if (!branches.containsKey(branchName)) {
+            System.out.println("A branch with that name does not exist.");
+            return;
+        }
+        ObjectId tip = branches.get(branchName).getCommit();
+        LinkedHashMap<String, ObjectId> refs = new LinkedHashMap<>();
+        List<ObjectId> prerequisites = new ArrayList<>();
+        if (file.exists()) {
+            Bundle old = Bundle.open(file);
+            if (!old.isTakenBy(commits)) {
+                if (!old.missing(commits).isEmpty()) {
+                    System.out.println("The bundle needs commits this repository lacks.");
+                    return;
                 }
+                old.unbundle(commits, objects);
+            }
+            refs.putAll(old.getRefs());
+            prerequisites.addAll(old.getPrerequisites());
+            ObjectId oldTip = refs.get(branchName);
+            if (oldTip != null && !MergeBase.isAncestor(commits, oldTip, tip)) {
+                System.out.println("Please pull down remote changes before pushing.");
+                return;
             }
+        }
+        refs.put(branchName, tip);
+        Bundle.write(file, refs, prerequisites, commits, objects);
+    }
 
-            branchCurrent.switchPointer(remoteCommit.getShortHash());
+    /** Fetches the branch BRANCHNAME of the bundle FILE, the remote NAME,
+     *  into the branch NAME/BRANCHNAME, as fetchBranch does. */
+    private boolean fetchBundle(File file, String name, String branchName) {
+        if (!file.exists()) {
+            System.out.println("Remote bundle not found.");
+            return false;
+        }
+        Bundle bundle = Bundle.open(file);
+        ObjectId tip = bundle.getRefs().get(branchName);
+        if (tip == null) {
+            System.out.println("That remote does not have that branch.");
+            return false;
+        }
+        if (!commits.contains(tip)) {
+            if (!bundle.missing(commits).isEmpty()) {
+                System.out.println("The bundle needs commits this repository lacks.");
+                return false;
+            }
+            bundle.unbundle(commits, objects);
+        }
+        String localName = name + "/" + branchName;
+        if (!branches.containsKey(localName)) {
+            branches.put(localName, new Branch(localName, tip));
+        } else {
+            branches.get(localName).switchPointer(tip);
         }
         serialize();
+        return true;
     }
 
-    public void pull(String name, String branchName) {
+    /** Writes a bundle at FILE of the branches named in SPECS and their
+     *  history. A spec starting with "^" names a branch or commit whose
+     *  history is left out, which the receiving repository must have. */
+    public void bundleCreate(String file, String... specs) {
         if (!GITLET_DIR.exists()) {
             System.out.println("Not in an initialized Gitlet directory.");
             return;
         }
 
-        if (!remoteRepos.containsKey(name)) {
-            System.out.println("Invalid remote name");
+        LinkedHashMap<String, ObjectId> refs = new LinkedHashMap<>();
+        List<ObjectId> prerequisites = new ArrayList<>();
+        for (String spec : specs) {
+            if (spec.startsWith("^")) {
+                String basis = spec.substring(1);
+                ObjectId id = branches.containsKey(basis)
+                    ? branches.get(basis).getCommit() : resolveCommit(basis);
+                if (id == null) {
+                    return;
+                }
+                prerequisites.add(id);
+            } else if (!branches.containsKey(spec)) {
+                System.out.println("No such branch exists.");
+                return;
+            } else {
+                refs.put(spec, branches.get(spec).getCommit());
+            }
+        }
+        if (refs.isEmpty()) {
+            throw Utils.error("Incorrect operands.");
+        }
+        Bundle.write(new File(file), refs, prerequisites, commits, objects);
+    }
+
+    /** Adds the commits and objects of the bundle FILE to this repository
+     *  and prints the commit and name of each of its branches, which are
+     *  not made into branches here; fetching from the bundle as a remote
+     *  does that. */
+    public void bundleUnbundle(String file) {
+        if (!GITLET_DIR.exists()) {
+            System.out.println("Not in an initialized Gitlet directory.");
             return;
         }
 
-        File remoteDir = remoteRepos.get(name);
-        if (!remoteDir.exists()) {
-            System.out.println("Remote directory not found.");
+        File bundleFile = new File(file);
+        if (!bundleFile.isFile()) {
+            System.out.println("Bundle not found.");
+            return;
+        }
+        Bundle bundle = Bundle.open(bundleFile);
+        List<ObjectId> missing = bundle.missing(commits);
+        if (!missing.isEmpty()) {
+            System.out.println("The bundle needs commits this repository lacks:");
+            for (ObjectId id : missing) {
+                System.out.println(id);
+            }
             return;
         }
+        bundle.unbundle(commits, objects);
+        for (Map.Entry<String, ObjectId> ref : bundle.getRefs().entrySet()) {
+            System.out.println(ref.getValue() + " " + ref.getKey());
+        }
+    }
 
-        HashMap<String, Commit> remoteCommits = Utils.readObject(Utils.join(remoteDir, "commits"),
-                HashMap.class);
-        HashMap<String, Branch> remoteBranches = Utils.readObject(Utils.join(remoteDir, "branches"),
-                HashMap.class);
-        Stage remoteStagingArea = Utils.readObject(Utils.join(remoteDir, "stage"),
-                Stage.class);
-        String remoteHead = Utils.readContentsAsString(Utils.join(remoteDir, "head.txt"));
-        String remoteCurrentBranch = Utils.readContentsAsString(Utils.join(remoteDir,
-                "currentbranch" + ".txt"));
+    /** Returns the commits of TIPS that OTHER has too. Both repositories
+     *  have the whole history of each of them, so push and fetch only send
+     *  what comes after them. */
+    private static List<ObjectId> commonTips(Collection<Branch> tips, CommitStore other) {
+        LinkedHashSet<ObjectId> common = new LinkedHashSet<>();
+        for (Branch branch : tips) {
+            if (other.contains(branch.getCommit())) {
+                common.add(branch.getCommit());
+            }
+        }
+        return new ArrayList<>(common);
+    }
 
-        if (!remoteBranches.containsKey(branchName)) {
-            System.out.println("That remote does not have that branch.");
-            return;
+    /** Fetches the branch BRANCHNAME of the remote NAME, which may be a
+     *  bundle, and merges it into the current branch. */
+    public void pull(String name, String branchName) {
+        if (fetchBranch(name, branchName)) {
+            merge(name + "/" + branchName);
+        }
+    }
+
+    /** Returns the changes in the staging area, as the path of each staged
+     *  file mapped to its blob id, or to null if it is staged for removal. */
+    private HashMap<String, ObjectId> stagedChanges() {
+        HashMap<String, ObjectId> changes = new HashMap<>(stagingArea.getAddFiles());
+        for (String fileName : stagingArea.getRemoveFiles().keySet()) {
+            changes.put(fileName, null);
+        }
+        return changes;
+    }
+
+    /** Returns FILENAME as a path relative to the working directory, with "/"
+     *  between names, or null if it is outside the working directory or
+     *  inside .gitlet. */
+    private static String workingPath(String fileName) {
+        Path root = CWD.toPath().toAbsolutePath().normalize();
+        Path path = root.relativize(root.resolve(fileName).normalize());
+        if (path.toString().isEmpty() || !insideWorkingTree(path)) {
+            return null;
         }
+        return path.toString().replace(File.separatorChar, '/');
+    }
 
-        fetch(name, branchName);
-        merge(name + "/" + branchName);
+    /** Returns true if PATH, normalized and relative to the working
+     *  directory, stays inside it and out of .gitlet. Whole components are
+     *  compared, so names such as "..foo" or ".gitletignore" are allowed. */
+    private static boolean insideWorkingTree(Path path) {
+        return !path.startsWith("..") && !path.startsWith(".gitlet");
+    }
 
+    /** Writes the blob BLOBID to the working file at PATH, creating its
+     *  directories as needed. */
+    private void restoreWorkingFile(ObjectId blobId, String path) {
+        File file = Utils.join(CWD, path);
+        file.getParentFile().mkdirs();
+        objects.restore(blobId, file);
+    }
+
+    /** Deletes the working file at PATH, along with any directories that
+     *  leaves empty. */
+    private static void deleteWorkingFile(String path) {
+        File file = Utils.join(CWD, path);
+        if (!file.isFile()) {
+            return;
+        }
+        file.delete();
+        File dir = file.getParentFile();
+        while (!dir.equals(CWD) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
     }
 
     private void serialize() {
 
-        /** Writes everything into their respective directories/files for persistence */
-        File commitsFile = Utils.join(GITLET_DIR, "commits");
-        Utils.writeObject(commitsFile, commits);
-        File branchesFile = Utils.join(GITLET_DIR, "branches");
-        Utils.writeObject(branchesFile, branches);
-        File stageFile = Utils.join(GITLET_DIR, "stage");
-        Utils.writeObject(stageFile, stagingArea);
-        File headFile = Utils.join(GITLET_DIR, "head.txt");
-        Utils.writeContents(headFile, head);
-        File currentBranchFile = Utils.join(GITLET_DIR, "currentbranch.txt");
-        Utils.writeContents(currentBranchFile, currentBranch);
-        File remoteFile = Utils.join(GITLET_DIR, "remote");
-        Utils.writeObject(remoteFile, remoteRepos);
+        /** Writes whatever changed into their respective files for persistence.
+         * Commits are written to their own files as soon as they are made, and
+         * changes to branches and the head are appended to the journal. */
+        refs.save(branches, head, currentBranch);
+        savedStage = writeIfChanged(Utils.join(GITLET_DIR, "stage"), stagingArea.toBytes(),
+                                    savedStage);
+        savedRemotes = writeIfChanged(Utils.join(GITLET_DIR, "remote"),
+                                      remotesToBytes(remoteRepos), savedRemotes);
+        saveIndex();
+    }
+
+    /** Writes CONTENTS to FILE unless they are the same as SAVED, the bytes
+     *  last read from or written to FILE, and returns CONTENTS. */
+    private static byte[] writeIfChanged(File file, byte[] contents, byte[] saved) {
+        if (!Arrays.equals(contents, saved)) {
+            Utils.writeContents(file, contents);
+        }
+        return contents;
     }
 
-    private void serializeRemote(File dir, HashMap<String, Commit> remoteCommits, HashMap<String,
-            Branch> remoteBranches, Stage remoteStage, String remoteHead, String remoteBranch) {
-        File commitsFile = Utils.join(dir, "commits");
-        Utils.writeObject(commitsFile, remoteCommits);
-        File branchesFile = Utils.join(dir, "branches");
-        Utils.writeObject(branchesFile, remoteBranches);
-        File stageFile = Utils.join(dir, "stage");
-        Utils.writeObject(stageFile, remoteStage);
-        File headFile = Utils.join(dir, "head.txt");
-        Utils.writeContents(headFile, remoteHead);
-        File currentBranchFile = Utils.join(dir, "currentbranch.txt");
-        Utils.writeContents(currentBranchFile, remoteBranch);
+    /** Returns REMOTES in the binary format (see BinaryFormat): their
+     *  number, then the name and .gitlet directory of each. */
+    static byte[] remotesToBytes(HashMap<String, File> remotes) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = BinaryFormat.writer(bytes, BinaryFormat.REMOTES,
+                                                        REMOTES_VERSION)) {
+            out.writeInt(remotes.size());
+            for (Map.Entry<String, File> remote : remotes.entrySet()) {
+                BinaryFormat.writeString(out, remote.getKey());
+                BinaryFormat.writeString(out, remote.getValue().getPath());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Returns the remotes stored as CONTENTS by remotesToBytes. */
+    private static HashMap<String, File> parseRemotes(byte[] contents) {
+        HashMap<String, File> remotes = new HashMap<>();
+        try (DataInputStream in = BinaryFormat.reader(contents, BinaryFormat.REMOTES,
+                                                      REMOTES_VERSION)) {
+            for (int count = in.readInt(); count > 0; count -= 1) {
+                String name = BinaryFormat.readString(in);
+                remotes.put(name, new File(BinaryFormat.readString(in)));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return remotes;
+    }
+
+    /** The files and directories of .gitlet that change when the state of
+     *  the repository does. */
+    private static final String[] STATE_FILES = {
+        "config", RefJournal.FILE, "stage", "index", "remote", "objects/pack", "commits/pack",
+        "commits/" + CommitGraph.FILE, "commits/" + CommitBitmaps.FILE,
+    };
+
+    /** Returns the modification time and size of each of the STATE_FILES,
+     *  which Daemon compares between commands to notice when something
+     *  else has changed the repository. */
+    static String stateStamp() {
+        StringBuilder stamp = new StringBuilder();
+        for (String name : STATE_FILES) {
+            File file = Utils.join(GITLET_DIR, name);
+            long modified;
+            try {
+                modified = Files.getLastModifiedTime(file.toPath()).to(TimeUnit.NANOSECONDS);
+            } catch (IOException excp) {
+                modified = -1;
+            }
+            stamp.append(name).append(' ').append(modified).append(' ')
+                 .append(file.length()).append('\n');
+        }
+        return stamp.toString();
+    }
+
+    /** Writes the index, if any of its entries changed. */
+    private void saveIndex() {
+        if (index.isChanged()) {
+            Utils.writeContents(Utils.join(GITLET_DIR, "index"), index.toBytes());
+            index.saved();
+        }
     }
 }
@@ -0,0 +1,142 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/** An exclusive lock on a repository, so that only one gitlet command at a
+ *  time reads and writes its state. Commands started while another holds
+ *  the lock wait for it, up to core.lockTimeout milliseconds.
+ *
+ *  The lock is an operating system lock on .gitlet/index.lock rather than
+ *  the file's existence, so it is released when its process exits, even
+ *  by crashing, and never has to be removed by hand. Within one process
+ *  the lock of a repository is held at most once, and taking it again
+ *  while it is held only counts another holder.
+ *
+ *  A lock is taken and released around the work it guards:
+ *
+ *        RepositoryLock lock = RepositoryLock.acquire(dir);
+ *        try {
+ *            ...
+ *        } finally {
+ *            RepositoryLock.release(lock);
+ *        }
+ *
+ *  @author Nathan Lee
+ */
+public class RepositoryLock {
+
+    public static final String FILE = "index.lock";
+
+    /** How long to wait between attempts to take the lock, in milliseconds. */
+    private static final long RETRY_INTERVAL = 20;
+
+    /** The locks this process holds, by the canonical path of their lock
+     *  file. Operating system locks belong to the whole process, and closing
+     *  any channel on a locked file drops them, so a repository this process
+     *  has locked already is never opened a second time; its lock is shared
+     *  and released once its last holder releases it. */
+    private static final Map<File, RepositoryLock> HELD = new HashMap<>();
+
+    private final File file;
+    private final FileChannel channel;
+    private final FileLock lock;
+
+    /** How many acquire() calls have returned this lock without a release(). */
+    private int holds;
+
+    private RepositoryLock(File file, FileChannel channel, FileLock lock) {
+        this.file = file;
+        this.channel = channel;
+        this.lock = lock;
+        this.holds = 1;
+    }
+
+    /** Locks the repository whose .gitlet directory is DIR, waiting for any
+     *  other command holding it. Returns null, which release() accepts, if
+     *  there is no repository to lock yet. If this process holds the lock
+     *  already, as when a repository pushes to itself, the same lock is
+     *  returned again. */
+    public static RepositoryLock acquire(File dir) {
+        if (!dir.isDirectory()) {
+            return null;
+        }
+        File file;
+        try {
+            file = Utils.join(dir, FILE).getCanonicalFile();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        synchronized (HELD) {
+            RepositoryLock held = HELD.get(file);
+            if (held != null) {
+                held.holds += 1;
+                return held;
+            }
+            RepositoryLock lock = lock(dir, file);
+            HELD.put(file, lock);
+            return lock;
+        }
+    }
+
+    /** Takes the operating system lock on FILE, the lock file of the
+     *  .gitlet directory DIR, which this process doesn't hold. */
+    private static RepositoryLock lock(File dir, File file) {
+        long timeout = new Config(Utils.join(dir, "config"))
+            .getInt(Config.LOCK_TIMEOUT, Config.DEFAULT_LOCK_TIMEOUT);
+        long deadline = System.currentTimeMillis() + timeout;
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                       StandardOpenOption.WRITE);
+            while (true) {
+                FileLock lock = channel.tryLock();
+                if (lock != null) {
+                    return new RepositoryLock(file, channel, lock);
+                }
+                if (System.currentTimeMillis() >= deadline) {
+                    channel.close();
+                    throw Utils.error("Another gitlet command is using the repository in %s.",
+                                      dir.getAbsoluteFile().getParent());
+                }
+                Thread.sleep(RETRY_INTERVAL);
+            }
+        } catch (IOException | InterruptedException excp) {
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+            } catch (IOException ignored) {
+                /** Already failing. */
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Releases LOCK, as returned by acquire(), which may be null. The
+     *  repository is unlocked once every acquire() that returned LOCK has
+     *  been matched by a release(). */
+    public static void release(RepositoryLock lock) {
+        if (lock == null) {
+            return;
+        }
+        synchronized (HELD) {
+            lock.holds -= 1;
+            if (lock.holds > 0) {
+                return;
+            }
+            HELD.remove(lock.file);
+            try {
+                lock.lock.release();
+                lock.channel.close();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.ObjectStreamConstants;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/** Reads files that the first version of gitlet wrote with Java
+ *  serialization. Its classes (a Commit holding the contents of every file
+ *  it tracked, a Blob, a Stage of Blobs) no longer exist in that form, so
+ *  the files cannot be read back as objects; the stream is parsed directly
+ *  instead, following chapter 6 of the Java Object Serialization
+ *  Specification. Each object in it comes back as
+ *      a String, or null;
+ *      a HashMap, for a java.util.HashMap;
+ *      an Instance holding the values of its fields by name, for any other
+ *          class.
+ *  Only what those files hold is understood: objects, strings, HashMaps and
+ *  primitive fields. Arrays, enums, classes and proxies are refused.
+ *
+ *  @author Nathan Lee
+ */
+class SerializedReader {
+
+    /** The stream being parsed. */
+    private DataInputStream in;
+
+    /** Everything given a handle so far, in order: class descriptions,
+     *  strings and objects. */
+    private List<Object> handles;
+
+    private SerializedReader(byte[] contents) {
+        in = new DataInputStream(new ByteArrayInputStream(contents));
+        handles = new ArrayList<>();
+    }
+
+    /** Returns true if CONTENTS start like a Java serialization stream. */
+    static boolean isSerialized(byte[] contents) {
+        return contents.length >= 2
+            && (short) ((contents[0] & 0xff) << 8 | contents[1] & 0xff)
+               == ObjectStreamConstants.STREAM_MAGIC;
+    }
+
+    /** Returns the object serialized in CONTENTS. Throws
+     *  IllegalArgumentException if CONTENTS isn't such a stream or holds
+     *  something this reader doesn't understand. */
+    static Object read(byte[] contents) {
+        SerializedReader reader = new SerializedReader(contents);
+        try {
+            if (reader.in.readShort() != ObjectStreamConstants.STREAM_MAGIC
+                || reader.in.readShort() != ObjectStreamConstants.STREAM_VERSION) {
+                throw new IOException("not a Java serialization stream");
+            }
+            return reader.readObject();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** An object of a class other than HashMap, as the values of its fields
+     *  by name. Fields of primitive types hold their boxed values. */
+    static class Instance {
+        private String className;
+        private HashMap<String, Object> fields;
+
+        private Instance(String className) {
+            this.className = className;
+            fields = new HashMap<>();
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        /** Returns the value of the field NAME, or null if there is none. */
+        public Object get(String name) {
+            return fields.get(name);
+        }
+    }
+
+    /** What a stream says about a class: its name, its flags, the types and
+     *  names of its serialized fields, and its superclass. */
+    private static class ClassDesc {
+        private String name;
+        private byte flags;
+        private List<Character> types = new ArrayList<>();
+        private List<String> names = new ArrayList<>();
+        private ClassDesc superDesc;
+    }
+
+    private Object readObject() throws IOException {
+        return readObject(in.readByte());
+    }
+
+    /** Reads the object whose type code, TC, has just been read. */
+    private Object readObject(byte tc) throws IOException {
+        switch (tc) {
+            case ObjectStreamConstants.TC_NULL:
+                return null;
+            case ObjectStreamConstants.TC_REFERENCE:
+                return handle(in.readInt());
+            case ObjectStreamConstants.TC_STRING:
+                return newHandle(readUtf(in.readUnsignedShort()));
+            case ObjectStreamConstants.TC_LONGSTRING:
+                return newHandle(readUtf(in.readLong()));
+            case ObjectStreamConstants.TC_OBJECT:
+                return readInstance();
+            default:
+                throw new IOException(String.format("unsupported type code 0x%02x", tc));
+        }
+    }
+
+    /** Reads an object after its TC_OBJECT: its class description, then
+     *  the data of each of its serializable classes, superclasses first. */
+    private Object readInstance() throws IOException {
+        ClassDesc desc = readClassDesc();
+        if (desc == null || (desc.flags & ObjectStreamConstants.SC_SERIALIZABLE) == 0
+            || (desc.flags & ObjectStreamConstants.SC_EXTERNALIZABLE) != 0) {
+            throw new IOException("unsupported class in stream");
+        }
+        boolean isMap = desc.name.equals("java.util.HashMap");
+        Object result = isMap ? new HashMap<Object, Object>() : new Instance(desc.name);
+        newHandle(result);
+
+        List<ClassDesc> classes = new ArrayList<>();
+        for (ClassDesc c = desc; c != null; c = c.superDesc) {
+            classes.add(0, c);
+        }
+        HashMap<String, Object> fields = isMap ? new HashMap<>() : ((Instance) result).fields;
+        List<Object> written = new ArrayList<>();
+        for (ClassDesc c : classes) {
+            for (int i = 0; i < c.types.size(); i += 1) {
+                fields.put(c.names.get(i), readValue(c.types.get(i)));
+            }
+            if ((c.flags & ObjectStreamConstants.SC_WRITE_METHOD) != 0) {
+                readAnnotation(written);
+            }
+        }
+        if (isMap) {
+            /** HashMap.writeObject writes its capacity and size as block
+             *  data, then each key followed by its value. */
+            @SuppressWarnings("unchecked")
+            HashMap<Object, Object> map = (HashMap<Object, Object>) result;
+            for (int i = 0; i + 1 < written.size(); i += 2) {
+                map.put(written.get(i), written.get(i + 1));
+            }
+        }
+        return result;
+    }
+
+    /** Reads a class description, which may also be null or a reference to
+     *  one read before. */
+    private ClassDesc readClassDesc() throws IOException {
+        byte tc = in.readByte();
+        if (tc == ObjectStreamConstants.TC_NULL) {
+            return null;
+        } else if (tc == ObjectStreamConstants.TC_REFERENCE) {
+            Object desc = handle(in.readInt());
+            if (!(desc instanceof ClassDesc)) {
+                throw new IOException("bad class reference");
+            }
+            return (ClassDesc) desc;
+        } else if (tc != ObjectStreamConstants.TC_CLASSDESC) {
+            throw new IOException(String.format("unsupported type code 0x%02x", tc));
+        }
+        ClassDesc desc = new ClassDesc();
+        desc.name = in.readUTF();
+        in.readLong();
+        newHandle(desc);
+        desc.flags = in.readByte();
+        for (int count = in.readShort(); count > 0; count -= 1) {
+            char type = (char) in.readByte();
+            desc.types.add(type);
+            desc.names.add(in.readUTF());
+            if (type == 'L' || type == '[') {
+                /** The name of the field's class. */
+                readObject();
+            }
+        }
+        readAnnotation(new ArrayList<>());
+        desc.superDesc = readClassDesc();
+        return desc;
+    }
+
+    /** Reads the value of a field of the given TYPE. */
+    private Object readValue(char type) throws IOException {
+        switch (type) {
+            case 'B':
+                return in.readByte();
+            case 'C':
+                return in.readChar();
+            case 'D':
+                return in.readDouble();
+            case 'F':
+                return in.readFloat();
+            case 'I':
+                return in.readInt();
+            case 'J':
+                return in.readLong();
+            case 'S':
+                return in.readShort();
+            case 'Z':
+                return in.readBoolean();
+            case 'L':
+            case '[':
+                return readObject();
+            default:
+                throw new IOException("bad field type " + type);
+        }
+    }
+
+    /** Reads what a class wrote after its fields, up to TC_ENDBLOCKDATA,
+     *  adding the objects to OBJECTS and skipping the block data. */
+    private void readAnnotation(List<Object> objects) throws IOException {
+        while (true) {
+            byte tc = in.readByte();
+            if (tc == ObjectStreamConstants.TC_ENDBLOCKDATA) {
+                return;
+            } else if (tc == ObjectStreamConstants.TC_BLOCKDATA) {
+                in.skipNBytes(in.readUnsignedByte());
+            } else if (tc == ObjectStreamConstants.TC_BLOCKDATALONG) {
+                in.skipNBytes(in.readInt());
+            } else {
+                objects.add(readObject(tc));
+            }
+        }
+    }
+
+    /** Reads a string of LENGTH bytes in the modified UTF-8 of
+     *  DataOutputStream.writeUTF, which strings of any length use here. */
+    private String readUtf(long length) throws IOException {
+        if (length > in.available()) {
+            throw new IOException("truncated string");
+        }
+        byte[] bytes = new byte[(int) length];
+        in.readFully(bytes);
+        StringBuilder result = new StringBuilder(bytes.length);
+        int i = 0;
+        while (i < bytes.length) {
+            int b = bytes[i] & 0xff;
+            int extra = b < 0x80 ? 0 : (b & 0xe0) == 0xc0 ? 1 : 2;
+            if (i + extra >= bytes.length) {
+                throw new IOException("truncated string");
+            }
+            if (extra == 0) {
+                result.append((char) b);
+            } else if (extra == 1) {
+                result.append((char) ((b & 0x1f) << 6 | bytes[i + 1] & 0x3f));
+            } else {
+                result.append((char) ((b & 0x0f) << 12 | (bytes[i + 1] & 0x3f) << 6
+                                      | bytes[i + 2] & 0x3f));
+            }
+            i += extra + 1;
+        }
+        return result.toString();
+    }
+
+    /** Gives OBJ the next handle and returns it. */
+    private Object newHandle(Object obj) {
+        handles.add(obj);
+        return obj;
+    }
+
+    private Object handle(int handle) throws IOException {
+        int index = handle - ObjectStreamConstants.baseWireHandle;
+        if (index < 0 || index >= handles.size()) {
+            throw new IOException("bad handle");
+        }
+        return handles.get(index);
+    }
+}
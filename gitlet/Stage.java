@@ -1,44 +1,39 @@
 package gitlet;
 
-import java.io.File;
-import java.io.Serializable;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.Map;
 
-public class Stage implements Serializable {
+public class Stage {
 
-    private HashMap<String, Blob> addition;
-    private HashMap<String, Blob> removal;
+    /** The version of the binary format written by toBytes. */
+    private static final int FORMAT_VERSION = 1;
+
+    /** Files staged for addition or removal, mapped to their blob ids. */
+    private HashMap<String, ObjectId> addition;
+    private HashMap<String, ObjectId> removal;
 
     public Stage() {
         addition = new HashMap<>();
         removal = new HashMap<>();
     }
 
-    public void addFileToAdd(File file) {
-
-        String fileName = file.getName();
-        Blob fileContents = new Blob(file);
-
-        addition.put(fileName, fileContents);
-    }
-
-    public void addFileToRemoval(File file) {
-
-        String fileName = file.getName();
-        Blob fileContents = new Blob(file);
-
-        removal.put(fileName, fileContents);
+    public void addFileToAdd(String fileName, ObjectId blobId) {
+        addition.put(fileName, blobId);
     }
 
-    public void addFileToRemoval(String fileName, Blob contents) {
-        removal.put(fileName, contents);
+    public void addFileToRemoval(String fileName, ObjectId blobId) {
+        removal.put(fileName, blobId);
     }
 
-    public HashMap<String, Blob> getAddFiles() {
+    public HashMap<String, ObjectId> getAddFiles() {
         return addition;
     }
 
-    public HashMap<String, Blob> getRemoveFiles() {
+    public HashMap<String, ObjectId> getRemoveFiles() {
         return removal;
     }
 
@@ -59,4 +54,49 @@ public class Stage implements Serializable {
         return addition.size() == 0 && removal.size() == 0;
     }
 
+    /** Returns this Stage in the binary format (see BinaryFormat): the
+     *  files staged for addition, then those staged for removal, each as a
+     *  count followed by every path and blob id. */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = BinaryFormat.writer(bytes, BinaryFormat.STAGE,
+                                                        FORMAT_VERSION)) {
+            writeFiles(out, addition);
+            writeFiles(out, removal);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Returns the stage stored as CONTENTS by toBytes. */
+    public static Stage parse(byte[] contents) {
+        Stage stage = new Stage();
+        try (DataInputStream in = BinaryFormat.reader(contents, BinaryFormat.STAGE,
+                                                      FORMAT_VERSION)) {
+            readFiles(in, stage.addition);
+            readFiles(in, stage.removal);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return stage;
+    }
+
+    private static void writeFiles(DataOutputStream out, HashMap<String, ObjectId> files)
+        throws IOException {
+        out.writeInt(files.size());
+        for (Map.Entry<String, ObjectId> file : files.entrySet()) {
+            BinaryFormat.writeString(out, file.getKey());
+            BinaryFormat.writeId(out, file.getValue());
+        }
+    }
+
+    private static void readFiles(DataInputStream in, HashMap<String, ObjectId> files)
+        throws IOException {
+        for (int count = in.readInt(); count > 0; count -= 1) {
+            String path = BinaryFormat.readString(in);
+            files.put(path, BinaryFormat.readId(in));
+        }
+    }
+
 }
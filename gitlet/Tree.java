@@ -0,0 +1,110 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** The listing of one directory in a commit: the name of each file or
+ *  subdirectory in it, mapped to the id of its blob or tree. A tree is kept
+ *  in the object store as lines of
+ *      blob <id> <name>
+ *      tree <id> <name>
+ *  in name order, so its id is the hash of its listing and a directory
+ *  whose contents don't change keeps the same id from commit to commit.
+ *
+ *  @author Nathan Lee
+ */
+public class Tree {
+
+    private static final String BLOB = "blob";
+    private static final String TREE = "tree";
+
+    /** The entries of this tree, by name. */
+    private TreeMap<String, Entry> entries;
+
+    /** An empty tree. */
+    public Tree() {
+        entries = new TreeMap<>();
+    }
+
+    /** A copy of OTHER, which may then be changed without changing OTHER. */
+    public Tree(Tree other) {
+        entries = new TreeMap<>(other.entries);
+    }
+
+    /** Returns the tree listed in CONTENTS. */
+    public static Tree parse(byte[] contents) {
+        Tree tree = new Tree();
+        String text = new String(contents, StandardCharsets.UTF_8);
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            String type = text.substring(start, start + 4);
+            ObjectId id = ObjectId.fromHex(text, start + 5);
+            String name = text.substring(start + 46, end);
+            tree.entries.put(name, new Entry(type.equals(TREE), id));
+            start = end + 1;
+        }
+        return tree;
+    }
+
+    /** Returns the listing of this tree, as it is stored. */
+    public byte[] toBytes() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            text.append(entry.getValue().isTree() ? TREE : BLOB).append(' ')
+                .append(entry.getValue().getId()).append(' ')
+                .append(entry.getKey()).append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Returns the entry named NAME, or null. */
+    public Entry get(String name) {
+        return entries.get(name);
+    }
+
+    /** Returns the entries of this tree, in name order. */
+    public Map<String, Entry> entries() {
+        return entries;
+    }
+
+    public void putBlob(String name, ObjectId id) {
+        entries.put(name, new Entry(false, id));
+    }
+
+    public void putTree(String name, ObjectId id) {
+        entries.put(name, new Entry(true, id));
+    }
+
+    public void remove(String name) {
+        entries.remove(name);
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /** The id of a blob or a subtree in a tree. */
+    public static class Entry {
+        private boolean tree;
+        private ObjectId id;
+
+        Entry(boolean tree, ObjectId id) {
+            this.tree = tree;
+            this.id = id;
+        }
+
+        public boolean isTree() {
+            return tree;
+        }
+
+        public ObjectId getId() {
+            return id;
+        }
+
+        public boolean sameAs(Entry other) {
+            return other != null && other.tree == tree && other.id.equals(id);
+        }
+    }
+}
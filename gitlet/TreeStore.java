@@ -0,0 +1,161 @@
+package gitlet;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** The trees of a repository, kept in its object store alongside the blobs.
+ *  A commit only records the id of its root tree. Paths are relative to the
+ *  working directory with "/" between names, as in "src/Main.java".
+ *
+ *  Since a tree's id is the hash of its contents, two trees with the same id
+ *  hold the same files all the way down. Commits share every subtree they
+ *  didn't change, and comparing two commits only descends into the
+ *  subtrees whose ids differ.
+ *
+ *  @author Nathan Lee
+ */
+public class TreeStore {
+
+    /** The store holding the trees. */
+    private ObjectStore store;
+
+    /** Trees already read or written during this command, by id. */
+    private HashMap<ObjectId, Tree> loaded;
+
+    public TreeStore(ObjectStore store) {
+        this.store = store;
+        loaded = new HashMap<>();
+    }
+
+    public ObjectStore getStore() {
+        return store;
+    }
+
+    /** Returns the tree with the given ID, or an empty tree if ID is null. */
+    public Tree get(ObjectId id) {
+        if (id == null) {
+            return new Tree();
+        }
+        Tree tree = loaded.get(id);
+        if (tree == null) {
+            tree = Tree.parse(store.read(id));
+            loaded.put(id, tree);
+        }
+        return tree;
+    }
+
+    /** Writes TREE into the store, unless it is already there, and returns
+     *  its id. */
+    public ObjectId put(Tree tree) {
+        ObjectId id = store.write(tree.toBytes());
+        loaded.put(id, tree);
+        return id;
+    }
+
+    /** Returns the id of the blob at PATH under the tree ROOT, or null if
+     *  there is no file there. */
+    public ObjectId blobId(ObjectId root, String path) {
+        String[] names = path.split("/");
+        ObjectId id = root;
+        for (int i = 0; i < names.length; i += 1) {
+            Tree.Entry entry = get(id).get(names[i]);
+            if (entry == null || entry.isTree() != (i < names.length - 1)) {
+                return null;
+            }
+            id = entry.getId();
+        }
+        return id;
+    }
+
+    /** Returns every file under the tree ROOT, by path, mapped to the id of
+     *  its blob. */
+    public Map<String, ObjectId> files(ObjectId root) {
+        Map<String, ObjectId> result = new TreeMap<>();
+        addFiles(root, "", result);
+        return result;
+    }
+
+    private void addFiles(ObjectId id, String prefix, Map<String, ObjectId> result) {
+        for (Map.Entry<String, Tree.Entry> entry : get(id).entries().entrySet()) {
+            String path = prefix + entry.getKey();
+            if (entry.getValue().isTree()) {
+                addFiles(entry.getValue().getId(), path + "/", result);
+            } else {
+                result.put(path, entry.getValue().getId());
+            }
+        }
+    }
+
+    /** Returns the id of the tree made by applying CHANGES to the tree ROOT.
+     *  CHANGES maps each path to its new blob id, or to null if the file is
+     *  removed. Only the trees on the way to a changed path are rewritten;
+     *  directories left empty are dropped. */
+    public ObjectId update(ObjectId root, Map<String, ObjectId> changes) {
+        Tree tree = new Tree(get(root));
+        HashMap<String, Map<String, ObjectId>> nested = new HashMap<>();
+        for (Map.Entry<String, ObjectId> change : changes.entrySet()) {
+            String path = change.getKey();
+            int slash = path.indexOf('/');
+            if (slash >= 0) {
+                nested.computeIfAbsent(path.substring(0, slash), k -> new HashMap<>())
+                      .put(path.substring(slash + 1), change.getValue());
+            } else if (change.getValue() == null) {
+                tree.remove(path);
+            } else {
+                tree.putBlob(path, change.getValue());
+            }
+        }
+        for (Map.Entry<String, Map<String, ObjectId>> dir : nested.entrySet()) {
+            Tree.Entry old = tree.get(dir.getKey());
+            ObjectId oldId = old != null && old.isTree() ? old.getId() : null;
+            ObjectId newId = update(oldId, dir.getValue());
+            if (get(newId).isEmpty()) {
+                tree.remove(dir.getKey());
+            } else {
+                tree.putTree(dir.getKey(), newId);
+            }
+        }
+        return put(tree);
+    }
+
+    /** Returns the files that differ between the trees FROM and TO, by path,
+     *  mapped to their blob ids in TO, or to null for files that TO doesn't
+     *  have. Subtrees with the same id in both are skipped without being
+     *  read. */
+    public Map<String, ObjectId> diff(ObjectId from, ObjectId to) {
+        Map<String, ObjectId> result = new TreeMap<>();
+        diff(from, to, "", result);
+        return result;
+    }
+
+    private void diff(ObjectId from, ObjectId to, String prefix,
+                      Map<String, ObjectId> result) {
+        if (from != null && from.equals(to)) {
+            return;
+        }
+        Tree fromTree = get(from);
+        Tree toTree = get(to);
+        TreeSet<String> names = new TreeSet<>(fromTree.entries().keySet());
+        names.addAll(toTree.entries().keySet());
+        for (String name : names) {
+            Tree.Entry before = fromTree.get(name);
+            Tree.Entry after = toTree.get(name);
+            if (before != null && before.sameAs(after)) {
+                continue;
+            }
+            String path = prefix + name;
+            ObjectId beforeTree = before != null && before.isTree() ? before.getId() : null;
+            ObjectId afterTree = after != null && after.isTree() ? after.getId() : null;
+            if (beforeTree != null || afterTree != null) {
+                diff(beforeTree, afterTree, path + "/", result);
+            }
+            if (after != null && !after.isTree()) {
+                result.put(path, after.getId());
+            } else if (before != null && !before.isTree()) {
+                result.put(path, null);
+            }
+        }
+    }
+}
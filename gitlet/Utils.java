@@ -1,22 +1,25 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 
 /** Assorted utilities.
@@ -33,30 +36,114 @@ class Utils {
 
     /* SHA-1 HASH VALUES. */
 
+    /** Each thread's SHA-1 digest. Looking one up among the security
+     *  providers costs more than hashing a small file, so each thread gets
+     *  one and resets it between uses. */
+    private static final ThreadLocal<MessageDigest> SHA1_DIGESTS =
+        ThreadLocal.withInitial(Utils::newSha1Digest);
+
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
-     *  be any mixture of byte arrays and Strings. */
+     *  be any mixture of byte arrays, ByteBuffers and Strings. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
-            }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+        return toHex(sha1Bytes(vals));
+    }
+
+    /** Returns the SHA-1 hash of the concatenation of VALS, as for sha1,
+     *  as its 20 raw bytes. The remaining bytes of each ByteBuffer are
+     *  consumed. */
+    static byte[] sha1Bytes(Object... vals) {
+        MessageDigest md = sha1Digest();
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+            } else if (val instanceof ByteBuffer) {
+                md.update((ByteBuffer) val);
+            } else if (val instanceof String) {
+                md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+            } else {
+                throw new IllegalArgumentException("improper type to sha1");
             }
-            return result.toString();
+        }
+        return md.digest();
+    }
+
+    /** Returns this thread's SHA-1 MessageDigest, reset. Its hash must be
+     *  finished before anything else on the same thread hashes; code that
+     *  keeps a digest across calls should use newSha1Digest. */
+    static MessageDigest sha1Digest() {
+        MessageDigest md = SHA1_DIGESTS.get();
+        md.reset();
+        return md;
+    }
+
+    /** Returns a new SHA-1 MessageDigest. */
+    static MessageDigest newSha1Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
     }
 
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** The value of each hexadecimal digit, indexed by character, and -1
+     *  for every other character below 128. */
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < HEX_DIGITS.length; i += 1) {
+            HEX_VALUES[HEX_DIGITS[i]] = (byte) i;
+            HEX_VALUES[Character.toUpperCase(HEX_DIGITS[i])] = (byte) i;
+        }
+    }
+
+    /** Returns the bytes of DIGEST as a lower-case hexadecimal numeral. */
+    static String toHex(byte[] digest) {
+        return toHex(digest, 0, digest.length);
+    }
+
+    /** Returns the LENGTH bytes of BYTES from OFFSET as a lower-case
+     *  hexadecimal numeral. */
+    static String toHex(byte[] bytes, int offset, int length) {
+        char[] result = new char[2 * length];
+        for (int i = 0; i < length; i += 1) {
+            byte b = bytes[offset + i];
+            result[2 * i] = HEX_DIGITS[(b >> 4) & 0xf];
+            result[2 * i + 1] = HEX_DIGITS[b & 0xf];
+        }
+        return new String(result);
+    }
+
+    /** Returns the bytes written as the hexadecimal numeral HEX. */
+    static byte[] fromHex(String hex) {
+        byte[] result = new byte[hex.length() / 2];
+        fromHex(hex, result, 0);
+        return result;
+    }
+
+    /** Writes the bytes of the hexadecimal numeral HEX into DEST from
+     *  OFFSET. A trailing odd digit is ignored. Throws
+     *  IllegalArgumentException if HEX has anything but hexadecimal
+     *  digits. */
+    static void fromHex(String hex, byte[] dest, int offset) {
+        int count = hex.length() / 2;
+        for (int i = 0; i < count; i += 1) {
+            dest[offset + i] = (byte) (hexValue(hex.charAt(2 * i)) << 4
+                                       | hexValue(hex.charAt(2 * i + 1)));
+        }
+    }
+
+    /** Returns the value of the hexadecimal digit C. */
+    static int hexValue(char c) {
+        int value = c < HEX_VALUES.length ? HEX_VALUES[c] : -1;
+        if (value < 0) {
+            throw new IllegalArgumentException("not a hexadecimal digit: " + c);
+        }
+        return value;
+    }
+
     /** Returns the SHA-1 hash of the concatenation of the strings in
      *  VALS. */
     static String sha1(List<Object> vals) {
@@ -113,16 +200,21 @@ class Utils {
 
     /** Write the result of concatenating the bytes in CONTENTS to FILE,
      *  creating or overwriting it as needed.  Each object in CONTENTS may be
-     *  either a String or a byte array.  Throws IllegalArgumentException
-     *  in case of problems. */
+     *  either a String or a byte array.  The contents are written to a
+     *  temporary file beside FILE, which is then renamed over it (see
+     *  moveDurably), so a crash leaves either the old contents or the new.
+     *  Throws IllegalArgumentException in case of problems. */
     static void writeContents(File file, Object... contents) {
+        File temp = null;
         try {
             if (file.isDirectory()) {
                 throw
                     new IllegalArgumentException("cannot overwrite directory");
             }
+            File dir = file.getAbsoluteFile().getParentFile();
+            temp = File.createTempFile("." + file.getName() + "-", ".tmp", dir);
             BufferedOutputStream str =
-                new BufferedOutputStream(Files.newOutputStream(file.toPath()));
+                new BufferedOutputStream(Files.newOutputStream(temp.toPath()));
             for (Object obj : contents) {
                 if (obj instanceof byte[]) {
                     str.write((byte[]) obj);
@@ -131,30 +223,38 @@ class Utils {
                 }
             }
             str.close();
+            moveDurably(temp, file);
         } catch (IOException | ClassCastException excp) {
+            if (temp != null) {
+                temp.delete();
+            }
             throw new IllegalArgumentException(excp.getMessage());
         }
     }
 
-    /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
-     *  Throws IllegalArgumentException in case of problems. */
-    static <T extends Serializable> T readObject(File file,
-                                                 Class<T> expectedClass) {
-        try {
-            ObjectInputStream in =
-                new ObjectInputStream(new FileInputStream(file));
-            T result = expectedClass.cast(in.readObject());
-            in.close();
-            return result;
-        } catch (IOException | ClassCastException
-                 | ClassNotFoundException excp) {
-            throw new IllegalArgumentException(excp.getMessage());
+    /** Flushes the contents of the finished file TEMP to disk and renames it
+     *  to TARGET in one step, replacing anything there, then flushes the
+     *  directory holding TARGET so that the rename itself survives a
+     *  crash. */
+    static void moveDurably(File temp, File target) throws IOException {
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(true);
         }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(target.getAbsoluteFile().getParentFile());
     }
 
-    /** Write OBJ to FILE. */
-    static void writeObject(File file, Serializable obj) {
-        writeContents(file, serialize(obj));
+    /** Flushes the entries of the directory DIR to disk, where the platform
+     *  allows it. */
+    static void syncDirectory(File dir) {
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            /** Not every platform can open a directory; the rename has still
+             *  happened. */
+            return;
+        }
     }
 
     /* DIRECTORIES */
@@ -205,21 +305,37 @@ class Utils {
     }
 
 
-    /* SERIALIZATION UTILITIES */
+    /* COMPRESSION UTILITIES */
 
-    /** Returns a byte array containing the serialized contents of OBJ. */
-    static byte[] serialize(Serializable obj) {
+    /** Returns CONTENTS compressed with zlib at the given LEVEL, from
+     *  0 (store only) to 9 (smallest). */
+    static byte[] deflate(byte[] contents, int level) {
+        Deflater deflater = new Deflater(level);
         try {
             ByteArrayOutputStream stream = new ByteArrayOutputStream();
-            ObjectOutputStream objectStream = new ObjectOutputStream(stream);
-            objectStream.writeObject(obj);
-            objectStream.close();
+            DeflaterOutputStream out = new DeflaterOutputStream(stream, deflater);
+            out.write(contents);
+            out.close();
             return stream.toByteArray();
         } catch (IOException excp) {
-            throw error("Internal error serializing commit.");
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            deflater.end();
         }
     }
 
+    /** Returns the uncompressed contents of the zlib stream CONTENTS. */
+    static byte[] inflate(byte[] contents) {
+        try {
+            InflaterInputStream in =
+                new InflaterInputStream(new ByteArrayInputStream(contents));
+            byte[] result = in.readAllBytes();
+            in.close();
+            return result;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
 
 
     /* MESSAGES AND ERROR REPORTING */
@@ -0,0 +1,178 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/** Scans and hashes the files of a working directory. With more than one
+ *  thread, each subdirectory is listed as its own fork-join task and files
+ *  are hashed in parallel on a pool of that many threads, which also bounds
+ *  how many files are read at once. With one thread everything is done in
+ *  order on the calling thread.
+ *
+ *  @author Nathan Lee
+ */
+public class WorkingTree {
+
+    /** The working directory. */
+    private File root;
+
+    /** The number of threads to scan and hash with. */
+    private int threads;
+
+    public WorkingTree(File root, int threads) {
+        this.root = root;
+        this.threads = threads;
+    }
+
+    /** Returns the path of every plain file in the working directory and
+     *  its subdirectories, in order, leaving out .gitlet. */
+    public List<String> files() {
+        ScanTask task = new ScanTask(root, "", threads > 1);
+        List<String> result;
+        if (threads > 1) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                result = pool.invoke(task);
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            result = task.compute();
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Returns the blob ids of the files at PATHS that exist, by path. Files
+     *  whose size and modification time match their entries in INDEX are not
+     *  read; the rest are hashed, and recorded in INDEX afterwards. */
+    public Map<String, ObjectId> hash(Collection<String> paths, Index index) {
+        return hash(paths, index, null);
+    }
+
+    /** Like hash, but also writes each file into OBJECTS unless its blob is
+     *  already there. A file that has to be read is hashed and compressed in
+     *  the same pass, so it is only read once. */
+    public Map<String, ObjectId> store(Collection<String> paths, Index index,
+                                       ObjectStore objects) {
+        return hash(paths, index, objects);
+    }
+
+    private Map<String, ObjectId> hash(Collection<String> paths, Index index,
+                                       ObjectStore objects) {
+        List<Hashed> hashed;
+        if (threads > 1 && paths.size() > 1) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                hashed = pool.submit(() -> hashAll(paths.parallelStream(), index, objects)).get();
+            } catch (ExecutionException excp) {
+                if (excp.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) excp.getCause();
+                }
+                throw new IllegalArgumentException(excp.getMessage());
+            } catch (InterruptedException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            hashed = hashAll(paths.stream(), index, objects);
+        }
+
+        /** The index is only read while hashing, and updated here. */
+        Map<String, ObjectId> result = new HashMap<>();
+        for (Hashed file : hashed) {
+            if (file.read) {
+                index.record(file.path, Utils.join(root, file.path), file.id);
+            }
+            result.put(file.path, file.id);
+        }
+        return result;
+    }
+
+    private List<Hashed> hashAll(Stream<String> paths, Index index, ObjectStore objects) {
+        return paths.map(path -> {
+            File file = Utils.join(root, path);
+            if (!file.isFile()) {
+                return null;
+            }
+            ObjectId id = index.lookup(path, file);
+            if (id != null && (objects == null || objects.contains(id))) {
+                return new Hashed(path, id, false);
+            }
+            id = objects == null ? ObjectStore.hash(file) : objects.writeFile(file);
+            return new Hashed(path, id, true);
+        }).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    /** The blob id of one working file, and whether the file had to be read
+     *  to find it. */
+    private static class Hashed {
+        private String path;
+        private ObjectId id;
+        private boolean read;
+
+        Hashed(String path, ObjectId id, boolean read) {
+            this.path = path;
+            this.id = id;
+            this.read = read;
+        }
+    }
+
+    /** Lists the files under one directory, forking a task for each of its
+     *  subdirectories if PARALLEL. */
+    private static class ScanTask extends RecursiveTask<List<String>> {
+        private static final long serialVersionUID = 1L;
+
+        private File dir;
+        private String prefix;
+        private boolean parallel;
+
+        ScanTask(File dir, String prefix, boolean parallel) {
+            this.dir = dir;
+            this.prefix = prefix;
+            this.parallel = parallel;
+        }
+
+        @Override
+        protected List<String> compute() {
+            List<String> result = new ArrayList<>();
+            List<ScanTask> subdirs = new ArrayList<>();
+            File[] files = dir.listFiles();
+            if (files == null) {
+                return result;
+            }
+            for (File file : files) {
+                String path = prefix + file.getName();
+                if (file.isFile()) {
+                    result.add(path);
+                } else if (file.isDirectory() && !path.equals(".gitlet")
+                           && !Files.isSymbolicLink(file.toPath())) {
+                    subdirs.add(new ScanTask(file, path + "/", parallel));
+                }
+            }
+            if (parallel) {
+                for (ScanTask task : invokeAll(subdirs)) {
+                    result.addAll(task.join());
+                }
+            } else {
+                for (ScanTask task : subdirs) {
+                    result.addAll(task.compute());
+                }
+            }
+            return result;
+        }
+    }
+}